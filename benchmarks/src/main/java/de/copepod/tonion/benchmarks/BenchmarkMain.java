@@ -0,0 +1,44 @@
+package de.copepod.tonion.benchmarks;
+
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the TOnion benchmarks headless and with the GC profiler attached, so
+ * that every result comes with its allocation rate.
+ * <p>
+ * All JMH command line options are accepted, e.g.
+ * <code>java -jar target/benchmarks.jar LayoutBenchmark -p shape=6x4</code>.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+public final class BenchmarkMain
+{
+   private BenchmarkMain()
+   {
+   }
+
+   public static void main(String[] args)
+         throws RunnerException, CommandLineOptionException
+   {
+      System.setProperty("java.awt.headless", "true");
+      Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+      new Runner(options).run();
+   }
+}
@@ -0,0 +1,147 @@
+package de.copepod.tonion.benchmarks;
+
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.LayoutManager2;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JPanel;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.copepod.tonion.BullsEyeLayout;
+import de.copepod.tonion.TotemLayout;
+
+/**
+ * Measures how often a parent layer reaches below its
+ * <code>BullsEyeLayout</code> children.
+ * <p>
+ * A column holds <code>panels</code> centered panels, each a
+ * <code>BullsEyeLayout</code> around a <code>TotemLayout</code> with four
+ * fields. Every invocation invalidates the column and lays it out again, so
+ * the column asks each BullsEye for its minimum and maximum size. The
+ * BullsEyes are not invalidated and answer from their caches: the
+ * <code>queries</code> counter, the size queries that reach the layers below
+ * the BullsEyes per invocation, stays at zero however often the column is
+ * laid out.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BullsEyeBenchmark
+{
+   /**
+    * number of centered panels in the column
+    */
+   @Param({ "16", "256" })
+   public int panels;
+
+   private JPanel column;
+
+   /**
+    * Counts the size queries that reach the layers below the BullsEyes.
+    */
+   @State(Scope.Thread)
+   @AuxCounters(AuxCounters.Type.EVENTS)
+   public static class Queries
+   {
+      static long count;
+
+      public long queries;
+
+      @Setup(Level.Iteration)
+      public void reset()
+      {
+         count = 0;
+         queries = 0;
+      }
+   }
+
+   /**
+    * A TotemLayout that counts how often it is asked for its sizes.
+    */
+   private static final class CountingTotemLayout extends TotemLayout
+   {
+      private static final long serialVersionUID = 1L;
+
+      CountingTotemLayout(Container self)
+      {
+         super(self, 2);
+      }
+
+      @Override
+      public Dimension minimumLayoutSize(Container self)
+      {
+         Queries.count++;
+         return super.minimumLayoutSize(self);
+      }
+
+      @Override
+      public Dimension maximumLayoutSize(Container self)
+      {
+         Queries.count++;
+         return super.maximumLayoutSize(self);
+      }
+   }
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      column = new JPanel(null);
+      column.setLayout(new TotemLayout(column, 2));
+      for (int i = 0; i < panels; i++)
+      {
+         JPanel inner = new JPanel(null);
+         inner.setLayout(new CountingTotemLayout(inner));
+         for (int j = 0; j < 4; j++)
+         {
+            JPanel field = new JPanel(null);
+            field.setMinimumSize(new Dimension(80 + j * 10, 20));
+            field.setMaximumSize(new Dimension(300 + i % 5 * 20, 24));
+            inner.add(field);
+         }
+         JPanel bullsEye = new JPanel(null);
+         bullsEye.setLayout(new BullsEyeLayout(bullsEye));
+         bullsEye.add(inner);
+         column.add(bullsEye);
+      }
+      Dimension min = column.getLayout().minimumLayoutSize(column);
+      column.setSize(min.width * 3 / 2, min.height * 3 / 2);
+      column.getLayout().layoutContainer(column);
+   }
+
+   @Benchmark
+   public Object layoutColumn(Queries queries)
+   {
+      Queries.count = 0;
+      ((LayoutManager2) column.getLayout()).invalidateLayout(column);
+      column.getLayout().layoutContainer(column);
+      queries.queries += Queries.count;
+      return column;
+   }
+}
@@ -0,0 +1,92 @@
+package de.copepod.tonion.benchmarks;
+
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JViewport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.copepod.tonion.OnionTree;
+import de.copepod.tonion.TOnionClipping;
+
+/**
+ * Measures a live resize of an onion tree that is the view of a
+ * <code>JViewport</code> showing an eighth of its height, with and without
+ * <code>TOnionClipping</code>.
+ * <p>
+ * Every invocation drags the viewport and the tree through sixteen widths and
+ * lays out all layers top-down, see {@link OnionTree#layout()}. With clipping
+ * the layers that can not be seen return at once.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ClippingBenchmark
+{
+   /**
+    * depth x fanout of the tree
+    */
+   @Param({ "2x64", "3x16", "6x4" })
+   public String shape;
+
+   @Param({ "false", "true" })
+   public boolean clipping;
+
+   private OnionTree tree;
+
+   private JViewport viewport;
+
+   private int width;
+
+   private int drag;
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      tree = OnionTree.build(shape);
+      Dimension min = tree.root.getLayout().minimumLayoutSize(tree.root);
+      width = min.width * 3 / 2;
+      viewport = new JViewport();
+      viewport.setView(tree.root);
+      viewport.setSize(width, min.height / 8);
+      tree.root.setSize(width, min.height);
+      if (clipping)
+         TOnionClipping.install(viewport);
+      tree.layout();
+   }
+
+   @Benchmark
+   public Object resize()
+   {
+      drag = (drag + 1) & 15;
+      viewport.setSize(width + drag, viewport.getHeight());
+      tree.root.setSize(width + drag, tree.root.getHeight());
+      tree.layout();
+      return tree.root;
+   }
+}
@@ -0,0 +1,114 @@
+package de.copepod.tonion.benchmarks;
+
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JPanel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.copepod.tonion.DistributionMode;
+import de.copepod.tonion.TotemLayout;
+
+/**
+ * Compares the distribution modes of <code>TotemLayout</code> on a single
+ * column of fields.
+ * <p>
+ * Every invocation lays out the column at the next of sixteen heights, so the
+ * remembered distributions never match and the available height is
+ * distributed anew. The heights lie between the sum of the minimum and the
+ * sum of the maximum heights, some fields reach their maximum height and some
+ * do not. Setting the bounds of the fields is part of the measurement of
+ * <code>layoutContainer</code> and costs the same in every mode,
+ * <code>preferredLayoutSize</code> measures the distribution alone.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DistributionBenchmark
+{
+   /**
+    * number of fields in the column
+    */
+   @Param({ "10", "1000", "100000" })
+   public int fields;
+
+   @Param({ "PROPORTIONAL", "EXACT", "WATER_FILLING" })
+   public DistributionMode mode;
+
+   private JPanel column;
+
+   private int[] heights;
+
+   private int next;
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      column = new JPanel(null);
+      TotemLayout layout = new TotemLayout(column);
+      layout.setDistributionMode(mode);
+      column.setLayout(layout);
+      int minimum = 0;
+      int maximum = 0;
+      for (int i = 0; i < fields; i++)
+      {
+         JPanel field = new JPanel(null);
+         int min = 12 + i % 7 * 4;
+         int max = min + i % 5 * 12;
+         field.setMinimumSize(new Dimension(80, min));
+         field.setMaximumSize(new Dimension(400, max));
+         column.add(field);
+         minimum += min;
+         maximum += max;
+      }
+      heights = new int[16];
+      for (int i = 0; i < heights.length; i++)
+      {
+         heights[i] = minimum + (maximum - minimum) * (i + 1) / 17;
+      }
+      column.setSize(300, heights[0]);
+      layout.layoutContainer(column);
+   }
+
+   @Benchmark
+   public Object layoutContainer()
+   {
+      column.setSize(300, heights[next]);
+      next = (next + 1) % heights.length;
+      column.getLayout().layoutContainer(column);
+      return column;
+   }
+
+   @Benchmark
+   public Object preferredLayoutSize()
+   {
+      column.setSize(300, heights[next]);
+      next = (next + 1) % heights.length;
+      return column.getLayout().preferredLayoutSize(column);
+   }
+}
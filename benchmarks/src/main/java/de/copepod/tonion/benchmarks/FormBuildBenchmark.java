@@ -0,0 +1,132 @@
+package de.copepod.tonion.benchmarks;
+
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+import java.awt.Component;
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JPanel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.copepod.tonion.TotemLayout;
+
+/**
+ * Measures adding and removing fields of a long <code>TotemLayout</code>
+ * form while its minimum size is watched, like a form builder showing the
+ * size after every change.
+ * <p>
+ * <code>build</code> adds all fields one after the other to an empty form,
+ * <code>removeAndAdd</code> takes one field out of the middle of the full form
+ * and puts it back. Both ask for the minimum size after every change.
+ * <code>buildBatched</code> adds all fields within one batch of a form nested
+ * in a column of outer layers and asks for the minimum size once.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FormBuildBenchmark
+{
+   /**
+    * number of fields of the form
+    */
+   @Param({ "100", "1000" })
+   public int fields;
+
+   private Component[] field;
+
+   private JPanel form;
+
+   /**
+    * a form for the batched build, nested three layers deep
+    */
+   private JPanel nestedForm;
+   private TotemLayout nestedLayout;
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      field = new Component[fields];
+      for (int i = 0; i < fields; i++)
+      {
+         JPanel leaf = new JPanel(null);
+         leaf.setMinimumSize(new Dimension(40 + i % 7 * 10, 20));
+         leaf.setMaximumSize(new Dimension(400 + i % 5 * 50, 20 + i % 3));
+         field[i] = leaf;
+      }
+      form = new JPanel();
+      form.setLayout(new TotemLayout(form, 2));
+      for (Component f : field)
+         form.add(f);
+
+      nestedForm = new JPanel();
+      nestedLayout = new TotemLayout(nestedForm, 2);
+      nestedForm.setLayout(nestedLayout);
+      JPanel inner = nestedForm;
+      for (int depth = 0; depth < 3; depth++)
+      {
+         JPanel outer = new JPanel();
+         outer.setLayout(new TotemLayout(outer));
+         outer.add(inner);
+         inner = outer;
+      }
+   }
+
+   @Benchmark
+   public Dimension build()
+   {
+      form.removeAll();
+      Dimension min = null;
+      for (Component f : field)
+      {
+         form.add(f);
+         min = form.getLayout().minimumLayoutSize(form);
+      }
+      return min;
+   }
+
+   @Benchmark
+   public Dimension removeAndAdd()
+   {
+      int middle = fields / 2;
+      Component f = form.getComponent(middle);
+      form.remove(middle);
+      form.getLayout().minimumLayoutSize(form);
+      form.add(f, middle);
+      return form.getLayout().minimumLayoutSize(form);
+   }
+
+   @Benchmark
+   public Dimension buildBatched()
+   {
+      nestedLayout.beginBatch();
+      nestedForm.removeAll();
+      for (Component f : field)
+         nestedForm.add(f);
+      nestedLayout.commitBatch();
+      return nestedLayout.minimumLayoutSize(nestedForm);
+   }
+}
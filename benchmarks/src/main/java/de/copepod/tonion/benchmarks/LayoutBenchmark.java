@@ -0,0 +1,166 @@
+package de.copepod.tonion.benchmarks;
+
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.LayoutManager2;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.copepod.tonion.OnionTree;
+
+/**
+ * Measures the four <code>LayoutManager</code> entry points on a deep onion
+ * tree.
+ * <p>
+ * All shapes hold 4096 leaf fields, they only differ in depth and fanout.
+ * <code>layoutContainer</code> is measured as a resize: every invocation
+ * changes the width of the outermost container and lays out the whole tree,
+ * either alternating between two widths or dragging through sixteen.
+ * <code>layoutAfterFieldChange</code> lays out the tree after one field
+ * changed its maximum size, <code>layoutAfterInvalidate</code> after all
+ * layouts were invalidated without any change. The size queries are measured cold, i.e. after
+ * invalidating all caches, and warm, i.e. answered from the caches.
+ * <p>
+ * Throughput and latency percentiles are reported by the two benchmark modes,
+ * the allocation rate by running with the GC profiler, see
+ * {@link BenchmarkMain}.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LayoutBenchmark
+{
+   /**
+    * depth x fanout of the tree
+    */
+   @Param({ "2x64", "3x16", "6x4", "12x2" })
+   public String shape;
+
+   private OnionTree tree;
+
+   private int width;
+
+   private boolean wider;
+
+   private int drag;
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      tree = OnionTree.build(shape);
+      Dimension min = tree.root.getLayout().minimumLayoutSize(tree.root);
+      // half way between minimum and twice the minimum, so that the
+      // distribution of the leftover space is part of the measurement
+      width = min.width * 3 / 2;
+      tree.root.setSize(width, min.height * 3 / 2);
+      tree.layout();
+   }
+
+   /**
+    * A resize of the outermost container by one pixel, followed by the layout
+    * of the whole tree.
+    */
+   @Benchmark
+   public Object layoutContainer()
+   {
+      wider = !wider;
+      tree.root.setSize(wider ? width + 1 : width, tree.root.getHeight());
+      tree.layout();
+      return tree.root;
+   }
+
+   /**
+    * A live resize that drags the outermost container through 16 different
+    * widths, so that no layer can answer from a remembered distribution. In
+    * steady state <code>gc.alloc.rate.norm</code> must stay at zero, which
+    * <code>de.copepod.tonion.AllocationCheck</code> in the TOnion tests
+    * asserts without JMH.
+    */
+   @Benchmark
+   public Object layoutContainerDrag()
+   {
+      drag = (drag + 1) & 15;
+      tree.root.setSize(width + drag, tree.root.getHeight());
+      tree.layout();
+      return tree.root;
+   }
+
+   /**
+    * A field in the middle of the tree changes its maximum size, its
+    * ancestors are invalidated and the whole tree is laid out again.
+    */
+   @Benchmark
+   public Object layoutAfterFieldChange()
+   {
+      Component field = tree.fields[tree.fields.length / 2];
+      Dimension max = field.getMaximumSize();
+      field.setMaximumSize(new Dimension(max.width, max.height ^ 1));
+      tree.invalidateAbove(field);
+      tree.layout();
+      return tree.root;
+   }
+
+   /**
+    * All layouts are invalidated, e.g. by a revalidate of the window, but no
+    * size changed, and the whole tree is laid out again.
+    */
+   @Benchmark
+   public Object layoutAfterInvalidate()
+   {
+      tree.invalidate();
+      tree.layout();
+      return tree.root;
+   }
+
+   @Benchmark
+   public Dimension minimumLayoutSize()
+   {
+      return tree.root.getLayout().minimumLayoutSize(tree.root);
+   }
+
+   @Benchmark
+   public Dimension minimumLayoutSizeCold()
+   {
+      tree.invalidate();
+      return tree.root.getLayout().minimumLayoutSize(tree.root);
+   }
+
+   @Benchmark
+   public Dimension maximumLayoutSizeCold()
+   {
+      tree.invalidate();
+      return ((LayoutManager2) tree.root.getLayout())
+            .maximumLayoutSize(tree.root);
+   }
+
+   @Benchmark
+   public Dimension preferredLayoutSize()
+   {
+      return tree.root.getLayout().preferredLayoutSize(tree.root);
+   }
+}
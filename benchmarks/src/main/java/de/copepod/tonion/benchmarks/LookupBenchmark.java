@@ -0,0 +1,102 @@
+package de.copepod.tonion.benchmarks;
+
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+import java.awt.Component;
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JPanel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.copepod.tonion.TotemLayout;
+
+/**
+ * Compares finding the field under a point of a long <code>TotemLayout</code>
+ * form by <code>Container.getComponentAt</code>, which looks at the fields one
+ * after the other, with <code>TotemLayout.getComponentIndexAt</code>, which
+ * searches the remembered positions.
+ * <p>
+ * Each invocation looks up the next of 64 points spread over the form.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LookupBenchmark
+{
+   /**
+    * number of fields of the form
+    */
+   @Param({ "100", "10000" })
+   public int fields;
+
+   private JPanel form;
+
+   private TotemLayout layout;
+
+   private int[] points;
+
+   private int next;
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      form = new JPanel(null);
+      layout = new TotemLayout(form, 2);
+      form.setLayout(layout);
+      for (int i = 0; i < fields; i++)
+      {
+         JPanel field = new JPanel(null);
+         field.setMinimumSize(new Dimension(80, 18 + i % 4));
+         field.setMaximumSize(new Dimension(400, 24 + i % 4 * 6));
+         form.add(field);
+      }
+      form.setSize(form.getMinimumSize());
+      form.doLayout();
+      points = new int[64];
+      for (int i = 0; i < points.length; i++)
+      {
+         points[i] = (int) ((long) form.getHeight() * (2 * i + 1)
+               / (2 * points.length));
+      }
+   }
+
+   @Benchmark
+   public Component getComponentAt()
+   {
+      int y = points[next];
+      next = (next + 1) % points.length;
+      return form.getComponentAt(10, y);
+   }
+
+   @Benchmark
+   public int getComponentIndexAt()
+   {
+      int y = points[next];
+      next = (next + 1) % points.length;
+      return layout.getComponentIndexAt(y);
+   }
+}
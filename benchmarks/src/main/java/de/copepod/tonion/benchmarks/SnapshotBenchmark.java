@@ -0,0 +1,116 @@
+package de.copepod.tonion.benchmarks;
+
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JLabel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.copepod.tonion.OnionTree;
+import de.copepod.tonion.TOnionSnapshot;
+
+/**
+ * Compares the first layout of an onion tree whose layouts remember nothing
+ * with the first layout after a <code>TOnionSnapshot</code> was restored.
+ * <p>
+ * Every invocation discards the remembered sizes of all layers, see
+ * {@link OnionTree#invalidate()}. <code>coldLayout</code> then lays out the
+ * tree, which asks every component for its sizes again.
+ * <code>restoredLayout</code> restores the snapshot read from its binary form
+ * first, hash check included, and lays out the tree without a single size
+ * query. The leaf fields either have their sizes set and answer at once, or
+ * are replaced by <code>JLabel</code>s that ask their UI, like most fields of
+ * a real form. Sized fields answer faster than the snapshot is read and
+ * restored, so only the labels show what a snapshot saves.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SnapshotBenchmark
+{
+   /**
+    * depth x fanout of the tree
+    */
+   @Param({ "2x64", "3x16", "6x4" })
+   public String shape;
+
+   /**
+    * sized leaf fields or labels
+    */
+   @Param({ "sized", "labels" })
+   public String fields;
+
+   private OnionTree tree;
+
+   private byte[] snapshot;
+
+   @Setup(Level.Trial)
+   public void setUp() throws IOException
+   {
+      tree = OnionTree.build(shape);
+      if (fields.equals("labels"))
+      {
+         for (Component field : tree.fields)
+         {
+            Container parent = field.getParent();
+            int index = parent.getComponentZOrder(field);
+            parent.remove(index);
+            parent.add(new JLabel("Field " + index), index);
+         }
+      }
+      Dimension min = tree.root.getLayout().minimumLayoutSize(tree.root);
+      tree.root.setSize(min.width * 3 / 2, min.height * 5 / 4);
+      tree.layout();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      TOnionSnapshot.capture(tree.root).write(out);
+      snapshot = out.toByteArray();
+   }
+
+   @Benchmark
+   public Object coldLayout()
+   {
+      tree.invalidate();
+      tree.layout();
+      return tree.root;
+   }
+
+   @Benchmark
+   public Object restoredLayout() throws IOException
+   {
+      tree.invalidate();
+      TOnionSnapshot.read(new ByteArrayInputStream(snapshot))
+            .restore(tree.root);
+      tree.layout();
+      return tree.root;
+   }
+}
@@ -0,0 +1,93 @@
+package de.copepod.tonion.benchmarks;
+
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.copepod.tonion.OnionTree;
+import de.copepod.tonion.TOnionSolver;
+
+/**
+ * Measures the <code>TOnionSolver</code> on the same trees as
+ * {@link LayoutBenchmark}, plus a form sized tree of 64 fields.
+ * <p>
+ * Every invocation solves the whole tree from scratch, which is what a
+ * server printing one form after the other does. <code>solveParallel</code>
+ * splits subtrees of more than 256 nodes among the threads of the common
+ * pool.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SolverBenchmark
+{
+   /**
+    * depth x fanout of the tree
+    */
+   @Param({ "2x8", "2x64", "3x16", "6x4", "12x2" })
+   public String shape;
+
+   private OnionTree tree;
+
+   private TOnionSolver solver;
+
+   private TOnionSolver parallelSolver;
+
+   private int width;
+
+   private int height;
+
+   private int drag;
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      tree = OnionTree.build(shape);
+      solver = new TOnionSolver();
+      parallelSolver = new TOnionSolver(ForkJoinPool.commonPool(), 256);
+      Dimension min = tree.root.getLayout().minimumLayoutSize(tree.root);
+      width = min.width * 3 / 2;
+      height = min.height * 3 / 2;
+   }
+
+   @Benchmark
+   public Rectangle[] solve()
+   {
+      drag = (drag + 1) & 15;
+      return solver.solve(tree.node, width + drag, height);
+   }
+
+   @Benchmark
+   public Rectangle[] solveParallel()
+   {
+      drag = (drag + 1) & 15;
+      return parallelSolver.solve(tree.node, width + drag, height);
+   }
+}
@@ -0,0 +1,130 @@
+package de.copepod.tonion.benchmarks;
+
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+import java.awt.Dimension;
+import java.awt.Point;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JPanel;
+import javax.swing.JViewport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.copepod.tonion.TotemLayout;
+import de.copepod.tonion.TrainLayout;
+
+/**
+ * Measures a long form of rows in a <code>JViewport</code>, with and without
+ * a virtualized <code>TotemLayout</code>.
+ * <p>
+ * Each row is a <code>TrainLayout</code> with two fields. <code>scroll</code>
+ * moves the view to the next of sixteen positions spread over the form and
+ * lays it out, <code>resize</code> lays it out for the next of sixteen
+ * viewport sizes and <code>widen</code> for the next of sixteen viewport
+ * widths at the same height. Headless there is no validation, so the content
+ * of the rows is not laid out.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class VirtualizedBenchmark
+{
+   /**
+    * number of rows of the form
+    */
+   @Param({ "1000", "20000" })
+   public int rows;
+
+   @Param({ "false", "true" })
+   public boolean virtualized;
+
+   private JViewport viewport;
+
+   private JPanel form;
+
+   private int[] positions;
+
+   private int next;
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      form = new JPanel(null);
+      TotemLayout layout = new TotemLayout(form, 2);
+      layout.setVirtualized(virtualized);
+      form.setLayout(layout);
+      for (int i = 0; i < rows; i++)
+      {
+         JPanel row = new JPanel(null);
+         row.setLayout(new TrainLayout(row));
+         for (int k = 0; k < 2; k++)
+         {
+            JPanel field = new JPanel(null);
+            field.setMinimumSize(new Dimension(60 + k * 40, 18 + i % 4));
+            field.setMaximumSize(new Dimension(400, 24 + i % 4 * 6));
+            row.add(field);
+         }
+         form.add(row);
+      }
+      viewport = new JViewport();
+      viewport.setView(form);
+      viewport.setSize(400, 600);
+      form.setSize(form.getPreferredSize());
+      positions = new int[16];
+      for (int i = 0; i < positions.length; i++)
+      {
+         positions[i] = (form.getHeight() - 600) * i / positions.length;
+      }
+      form.doLayout();
+   }
+
+   @Benchmark
+   public Object scroll()
+   {
+      viewport.setViewPosition(new Point(0, positions[next]));
+      next = (next + 1) % positions.length;
+      form.doLayout();
+      return form;
+   }
+
+   @Benchmark
+   public Object resize()
+   {
+      viewport.setSize(400 + next, 600 + next * 8);
+      next = (next + 1) % positions.length;
+      form.doLayout();
+      return form;
+   }
+
+   @Benchmark
+   public Object widen()
+   {
+      viewport.setSize(400 + next * 8, 600);
+      next = (next + 1) % positions.length;
+      form.doLayout();
+      return form;
+   }
+}
@@ -0,0 +1,273 @@
+package de.copepod.tonion.jfr;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.Container;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import de.copepod.tonion.TOnionInstrumentation;
+import de.copepod.tonion.TOnionLayer;
+import de.copepod.tonion.TOnionListener;
+import de.copepod.tonion.TOnionMeasurement;
+
+/**
+ * A <code>TOnionFlightRecorder</code> turns the work of the TOnion layouts
+ * into Java Flight Recorder events, so that layout time shows up per form in
+ * a recording instead of anonymously under <code>Container.validate</code>.
+ * <p>
+ * There are three events in the category TOnion:
+ * <ul>
+ * <li><code>de.copepod.tonion.Layout</code> for each layout pass,</li>
+ * <li><code>de.copepod.tonion.SizeQuery</code> for each minimum or maximum
+ * size query, telling whether the remembered size was used,</li>
+ * <li><code>de.copepod.tonion.Invalidation</code> each time the remembered
+ * sizes of a layout are discarded.</li>
+ * </ul>
+ * Each event carries the name of the container, or its class if it has no
+ * name, the layout, the number of components and the depth, i.e. the number
+ * of TOnion layers above the container. Layout passes and size queries take
+ * longer than 1 ms before they are recorded, unless the settings say
+ * otherwise.
+ * <p>
+ * The settings profile <code>tonion.jfc</code> next to this class enables all
+ * three events. It can be copied out of the jar and passed to
+ * <code>-XX:StartFlightRecording:settings=tonion.jfc</code>, or used for a
+ * recording started by the application:
+ *
+ * <pre>
+ * TOnionFlightRecorder.install();
+ * Recording recording = new Recording(TOnionFlightRecorder.configuration());
+ * recording.start();
+ * </pre>
+ * <p>
+ * Flight Recorder needs Java 11 or Java 8 update 262 and later, so the
+ * recorder lives in the module tonion-jfr, TOnion itself runs on any Java 8
+ * without it.
+ *
+ * @author Birke Heeren
+ * @since private
+ * @see TOnionInstrumentation
+ */
+public final class TOnionFlightRecorder implements TOnionListener
+{
+   /**
+    * The events begun and not yet committed, one stack per thread since size
+    * queries nest.
+    */
+   private final ThreadLocal<ArrayDeque<OperationEvent>> open =
+         new ThreadLocal<ArrayDeque<OperationEvent>>()
+         {
+            @Override
+            protected ArrayDeque<OperationEvent> initialValue()
+            {
+               return new ArrayDeque<OperationEvent>();
+            }
+         };
+
+   /**
+    * Creates a flight recorder listener, see install().
+    */
+   public TOnionFlightRecorder()
+   {
+   }
+
+   /**
+    * Installs a new flight recorder listener with
+    * <code>TOnionInstrumentation</code>.
+    *
+    * @return the listener
+    */
+   public static TOnionFlightRecorder install()
+   {
+      TOnionFlightRecorder recorder = new TOnionFlightRecorder();
+      TOnionInstrumentation.setListener(recorder);
+      return recorder;
+   }
+
+   /**
+    * Reads the settings profile <code>tonion.jfc</code>, which enables the
+    * TOnion events.
+    *
+    * @return the configuration
+    * @throws IOException
+    *            if the profile can not be read
+    * @throws ParseException
+    *            if the profile is not valid
+    */
+   public static Configuration configuration()
+         throws IOException, ParseException
+   {
+      Reader reader = new InputStreamReader(
+            TOnionFlightRecorder.class.getResourceAsStream("tonion.jfc"),
+            StandardCharsets.UTF_8);
+      try
+      {
+         return Configuration.create(reader);
+      }
+      finally
+      {
+         reader.close();
+      }
+   }
+
+   @Override
+   public void started(Operation operation, Container self)
+   {
+      OperationEvent event;
+      if (operation == Operation.LAYOUT)
+         event = new LayoutEvent();
+      else
+         event = new SizeQueryEvent();
+      event.begin();
+      open.get().push(event);
+   }
+
+   @Override
+   public void finished(Operation operation, Container self,
+         TOnionMeasurement measurement)
+   {
+      OperationEvent event = open.get().poll();
+      if (event == null)
+         return;
+      event.end();
+      if (!event.shouldCommit())
+         return;
+      event.describe(self, measurement.getComponentCount());
+      event.queries = measurement.getQueries();
+      event.allocated = measurement.getAllocatedBytes();
+      if (event instanceof LayoutEvent)
+      {
+         ((LayoutEvent) event).boundsSet = measurement.getBoundsSet();
+      }
+      else
+      {
+         SizeQueryEvent query = (SizeQueryEvent) event;
+         query.size = operation == Operation.MINIMUM_SIZE ? "minimum"
+               : "maximum";
+         query.cached = measurement.isCached();
+      }
+      event.commit();
+   }
+
+   @Override
+   public void invalidated(Container self)
+   {
+      InvalidationEvent event = new InvalidationEvent();
+      if (!event.shouldCommit())
+         return;
+      event.describe(self, self.getComponentCount());
+      event.commit();
+   }
+
+   /**
+    * The fields all TOnion events have in common.
+    */
+   abstract static class TOnionEvent extends Event
+   {
+      @Label("Container")
+      @Description("The name of the container, its class if it has no name")
+      String container;
+
+      @Label("Layout")
+      String layout;
+
+      @Label("Components")
+      int components;
+
+      @Label("Depth")
+      @Description("The number of TOnion layers above the container")
+      int depth;
+
+      void describe(Container self, int ncomponents)
+      {
+         container = self.getName() != null ? self.getName()
+               : self.getClass().getName();
+         layout = self.getLayout() == null ? null
+               : self.getLayout().getClass().getSimpleName();
+         components = ncomponents;
+         for (Container c = self.getParent(); c != null; c = c.getParent())
+         {
+            if (c.getLayout() instanceof TOnionLayer)
+               depth++;
+         }
+      }
+   }
+
+   /**
+    * The fields of the events that measure an operation.
+    */
+   abstract static class OperationEvent extends TOnionEvent
+   {
+      @Label("Size Queries")
+      @Description("The number of components asked for their size")
+      int queries;
+
+      @Label("Allocated")
+      @Description("The bytes allocated, including the layers below, "
+            + "-1 if unknown")
+      @DataAmount
+      long allocated;
+   }
+
+   @Name("de.copepod.tonion.Layout")
+   @Label("TOnion Layout")
+   @Description("A layout pass of a TotemLayout, TrainLayout or "
+         + "BullsEyeLayout")
+   @Category("TOnion")
+   @Threshold("1 ms")
+   @StackTrace(false)
+   static final class LayoutEvent extends OperationEvent
+   {
+      @Label("Bounds Set")
+      @Description("The number of components whose bounds were changed")
+      int boundsSet;
+   }
+
+   @Name("de.copepod.tonion.SizeQuery")
+   @Label("TOnion Size Query")
+   @Description("A minimum or maximum size query of a TotemLayout, "
+         + "TrainLayout or BullsEyeLayout")
+   @Category("TOnion")
+   @Threshold("1 ms")
+   @StackTrace(false)
+   static final class SizeQueryEvent extends OperationEvent
+   {
+      @Label("Size")
+      @Description("minimum or maximum")
+      String size;
+
+      @Label("Cached")
+      @Description("Whether the remembered size was used")
+      boolean cached;
+   }
+
+   @Name("de.copepod.tonion.Invalidation")
+   @Label("TOnion Invalidation")
+   @Description("The remembered sizes of a TotemLayout, TrainLayout or "
+         + "BullsEyeLayout were discarded")
+   @Category("TOnion")
+   @StackTrace(false)
+   static final class InvalidationEvent extends TOnionEvent
+   {
+   }
+}
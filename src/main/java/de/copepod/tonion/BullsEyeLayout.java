@@ -17,6 +17,8 @@ import java.awt.LayoutManager2;
 
 import javax.swing.JViewport;
 
+import de.copepod.tonion.TOnionListener.Operation;
+
 /**
  * The <code>BullsEyeLayout</code> class is a layout manager that lays out a
  * container's component in the center.
@@ -62,7 +64,8 @@ import javax.swing.JViewport;
  */
 
 public class BullsEyeLayout
-      implements LayoutManager, LayoutManager2, java.io.Serializable
+      implements LayoutManager, LayoutManager2, TOnionLayer,
+      java.io.Serializable
 {
 
    /*
@@ -88,11 +91,24 @@ public class BullsEyeLayout
     */
    private Dimension dimMax;
 
+   /**
+    * BullsEyeLayout leaves the size queries to an engine, which also
+    * remembers the minimum and maximum size of the component.
+    */
+   private final OnionLayoutEngine engine = new OnionLayoutEngine(true);
+
    /**
     * This is the container BullsEyeLayout is assigned to.
     */
    private Container self;
 
+   /**
+    * true if the layers above were invalidated and the content sizes were not
+    * asked for since. Further invalidations need not be passed on then, the
+    * layers above are still dirty.
+    */
+   private transient boolean dirty;
+
    /**
     * This is a name for test mode.
     */
@@ -122,7 +138,11 @@ public class BullsEyeLayout
     *           the container to be laid out
     * @param testname
     *           the name of the object in test mode
+    * @deprecated the test mode prints every layout pass to
+    *             <code>System.out</code>, use a <code>TOnionListener</code>
+    *             installed with <code>TOnionInstrumentation</code> instead
     */
+   @Deprecated
    public BullsEyeLayout(Container self, String testname)
    {
       this(self, testname, LayoutMode.TEST_BULLS_EYE);
@@ -175,7 +195,7 @@ public class BullsEyeLayout
             else if (self.getParent() instanceof JViewport)
             {
                JViewport vp = (JViewport) self.getParent();
-               Insets insets = self.getInsets();
+               Insets insets = engine.getInsets(self);
                return new Dimension(vp.getWidth() - insets.left - insets.right,
                      vp.getHeight() - insets.top - insets.bottom);
             }
@@ -190,118 +210,29 @@ public class BullsEyeLayout
             return this.minimumLayoutSize(self);
          }
 
-         Insets insets = self.getInsets();
-         int w;
-         int h;
-
-         h = self.getHeight() - (insets.top + insets.bottom);
-         w = self.getWidth() - (insets.left + insets.right);
-
-         int hmin = 0;
-         int hmax = Integer.MAX_VALUE;
-         int wmin = 0;
-         int wmax = Integer.MAX_VALUE;
-         Component comp = self.getComponent(0);
-         Dimension dmin;
-         Dimension dmax;
-         /*
-          * In case Component is Container with Layout instance of TrainLayout,
-          * TotemLayout or BullsEyeLayout the dimensions derived by content - if
-          * any - should override given Dimensions. Only when there is no
-          * content the given Dimensions should be used.
-          */
-         if (comp instanceof Container && (((Container) comp)
-               .getLayout() instanceof TotemLayout
-               || ((Container) comp).getLayout() instanceof TrainLayout
-               || ((Container) comp).getLayout() instanceof BullsEyeLayout))
-         {
-            Dimension dminContent = ((LayoutManager2) ((Container) comp)
-                  .getLayout()).minimumLayoutSize((Container) comp);
-            if (dminContent != null)
-               dmin = dminContent;
-            else
-               dmin = comp.getMinimumSize();
-
-            Dimension dmaxContent = ((LayoutManager2) ((Container) comp)
-                  .getLayout()).maximumLayoutSize((Container) comp);
-            if (dmaxContent != null)
-               dmax = dmaxContent;
-            else
-               dmax = comp.getMaximumSize();
-         }
-         else
-         {
-            dmin = comp.getMinimumSize();
-            dmax = comp.getMaximumSize();
-         }
-
-         // MINIMUM
-         if (dmin != null)
-         {
-            if (dmin.height > hmin)
-               hmin = dmin.height; // minheight is maximized
-            if (dmin.width > wmin)
-               wmin = dmin.width; // minwidth is maximized
-         }
-         else // minimum was not set on innermost layer
-         {
-            hmin = h;
-            wmin = w;
-         }
-
-         // MAXIMUM
-         if (dmax != null)
-         {
-            if (dmax.height < hmax)
-               hmax = dmax.height; // maxheight is minimized
-            if (dmax.width < wmax)
-               wmax = dmax.width; // maxwidth is minimized
-         }
-         else // maximum was not set on innermost layer
-         {
-            hmax = h;
-            wmax = w;
-         }
-
-         // height
-         if (hmin > hmax)
-         {
-            // error correction
-            hmax = hmin;
-         }
+         Insets insets = engine.getInsets(self);
+         int w = self.getWidth() - (insets.left + insets.right);
+         int h = self.getHeight() - (insets.top + insets.bottom);
 
-         if (hmax != Integer.MAX_VALUE)
+         // minimum and maximum that were not set on innermost layer
+         int wmin = w;
+         int hmin = h;
+         int wmax = w;
+         int hmax = h;
+         engine.cacheMinimumSizes(self, ncomponents);
+         engine.cacheMaximumSizes(self, ncomponents);
+         if (engine.hasMinimumSize(0))
          {
-            if (h <= hmin)
-               h = hmin;
-            else if (hmax < h)
-               h = hmax;
-            // else h = h;
+            wmin = Math.max(0, engine.getMinimumWidth(0));
+            hmin = Math.max(0, engine.getMinimumHeight(0));
          }
-         else if (h < hmin)
-            h = hmin;
-         // else h = h;
-
-         // width
-         if (wmin > wmax)
+         if (engine.hasMaximumSize(0))
          {
-            // error correction
-            wmax = wmin;
+            wmax = engine.getMaximumWidth(0);
+            hmax = engine.getMaximumHeight(0);
          }
-
-         if (wmax != Integer.MAX_VALUE)
-         {
-            if (w <= wmin)
-               w = wmin;
-            else if (wmax < w)
-               w = wmax;
-            // else w = w;
-         }
-         else if (w < wmin)
-            w = wmin;
-         // else w = w;
-
-         return new Dimension(w, h);
+         return new Dimension(OnionLayoutEngine.clamp(w, wmin, wmax),
+               OnionLayoutEngine.clamp(h, hmin, hmax));
       }
    }
 
@@ -329,63 +260,46 @@ public class BullsEyeLayout
       synchronized (self.getTreeLock())
       {
          checkContainer(self);
-         if (dimMin != null)
-            return dimMin;
-         Insets insets = self.getInsets();
-         int h = 0;
-         int w = 0;
-         int ncomponents = self.getComponentCount();
-         if (ncomponents > 1)
-         {
-            throw new AWTError("BullsEyeLayout can hold only one component");
-         }
-         if (ncomponents == 0)
-         {
-            dimMin = null;
-            return null;
-         }
+         checkResized(self);
+         dirty = false;
+         TOnionListener listener = TOnionInstrumentation.getListener();
+         TOnionMeasurement m = listener == null ? null
+               : engine.startMeasurement(listener, Operation.MINIMUM_SIZE, self);
+         boolean cached = dimMin != null;
+         if (!cached)
+            dimMin = contentMinimumSize(self);
+         if (m != null)
+            engine.finishMeasurement(listener, Operation.MINIMUM_SIZE, self, m,
+                  cached);
+         return dimMin;
+      }
+   }
 
-         Component comp = self.getComponent(0);
-         Dimension dmin;
-
-         /*
-          * In case Component is Container with Layout instance of TrainLayout,
-          * TotemLayout or BullsEyeLyout the dimensions derived by content - if
-          * any - should override given Dimensions. Only when there is no
-          * content the given Dimensions should be used.
-          */
-         if (comp instanceof Container && (((Container) comp)
-               .getLayout() instanceof TotemLayout
-               || ((Container) comp).getLayout() instanceof TrainLayout
-               || ((Container) comp).getLayout() instanceof BullsEyeLayout))
-         {
-            Dimension dminContent = ((LayoutManager2) ((Container) comp)
-                  .getLayout()).minimumLayoutSize((Container) comp);
-            if (dminContent != null)
-               dmin = dminContent;
-            else
-               dmin = comp.getMinimumSize();
-         }
-         else
-         {
-            dmin = comp.getMinimumSize();
-         }
-         if (dmin != null)
-         {
-            if (h < dmin.height)
-               h = dmin.height; // minheight is maximized
-            if (w < dmin.width)
-               w = dmin.width; // minwidth is maximized
-         }
-         else
-         {
-            h = self.getHeight() - (insets.top + insets.bottom);
-            w = self.getWidth() - (insets.left + insets.right);
-         }
+   /**
+    * Determines the minimum size of the component, the size of the
+    * container if the component has none.
+    *
+    * @return the minimum size, null if the container is empty
+    */
+   private Dimension contentMinimumSize(Container self)
+   {
+      int ncomponents = self.getComponentCount();
+      if (ncomponents > 1)
+      {
+         throw new AWTError("BullsEyeLayout can hold only one component");
+      }
+      if (ncomponents == 0)
+         return null;
 
-         dimMin = new Dimension(w, h);
-         return dimMin;
+      engine.cacheMinimumSizes(self, ncomponents);
+      if (engine.hasMinimumSize(0))
+      {
+         return new Dimension(Math.max(0, engine.getMinimumWidth(0)),
+               Math.max(0, engine.getMinimumHeight(0)));
       }
+      Insets insets = engine.getInsets(self);
+      return new Dimension(self.getWidth() - (insets.left + insets.right),
+            self.getHeight() - (insets.top + insets.bottom));
    }
 
    /**
@@ -402,7 +316,7 @@ public class BullsEyeLayout
     *
     * @param self
     *           the container in which to do the layout
-    * @return the minimum dimensions needed to lay out the subcomponents of the
+    * @return the maximum dimensions needed to lay out the subcomponents of the
     *         specified container
     * @see java.awt.Container#doLayout
     */
@@ -412,58 +326,46 @@ public class BullsEyeLayout
       synchronized (self.getTreeLock())
       {
          checkContainer(self);
-         if (dimMax != null)
-            return dimMax;
-         Insets insets = self.getInsets();
-         int h = 0;
-         int w = 0;
-         int ncomponents = self.getComponentCount();
-         if (ncomponents > 1)
-         {
-            throw new AWTError("BullsEyeLayout can hold only one component");
-         }
-
-         Component comp = self.getComponent(0);
-         Dimension dmax;
-
-         /*
-          * In case Component is Container with Layout instance of TrainLayout,
-          * TotemLayout or BullsEyeLyout the dimensions derived by content - if
-          * any - should override given Dimensions. Only when there is no
-          * content the given Dimensions should be used.
-          */
-         if (comp instanceof Container && (((Container) comp)
-               .getLayout() instanceof TotemLayout
-               || ((Container) comp).getLayout() instanceof TrainLayout
-               || ((Container) comp).getLayout() instanceof BullsEyeLayout))
-         {
-            Dimension dmaxContent = ((LayoutManager2) ((Container) comp)
-                  .getLayout()).maximumLayoutSize((Container) comp);
-            if (dmaxContent != null)
-               dmax = dmaxContent;
-            else
-               dmax = comp.getMaximumSize();
-         }
-         else
-         {
-            dmax = comp.getMaximumSize();
-         }
+         checkResized(self);
+         dirty = false;
+         TOnionListener listener = TOnionInstrumentation.getListener();
+         TOnionMeasurement m = listener == null ? null
+               : engine.startMeasurement(listener, Operation.MAXIMUM_SIZE, self);
+         boolean cached = dimMax != null;
+         if (!cached)
+            dimMax = contentMaximumSize(self);
+         if (m != null)
+            engine.finishMeasurement(listener, Operation.MAXIMUM_SIZE, self, m,
+                  cached);
+         return dimMax;
+      }
+   }
 
-         if (dmax != null)
-         {
-            if (h < dmax.height)
-               h = dmax.height; // maxheight is maximized
-            if (w < dmax.width)
-               w = dmax.width; // maxwidth is maximized
-         }
-         else
-         {
-            h = self.getHeight() - (insets.top + insets.bottom);
-            w = self.getWidth() - (insets.left + insets.right);
-         }
+   /**
+    * Determines the maximum size of the component, the size of the
+    * container if the component has none.
+    *
+    * @return the maximum size, null if the container is empty
+    */
+   private Dimension contentMaximumSize(Container self)
+   {
+      int ncomponents = self.getComponentCount();
+      if (ncomponents > 1)
+      {
+         throw new AWTError("BullsEyeLayout can hold only one component");
+      }
+      if (ncomponents == 0)
+         return null;
 
-         return new Dimension(w, h);
+      engine.cacheMaximumSizes(self, ncomponents);
+      if (engine.hasMaximumSize(0))
+      {
+         return new Dimension(Math.max(0, engine.getMaximumWidth(0)),
+               Math.max(0, engine.getMaximumHeight(0)));
       }
+      Insets insets = engine.getInsets(self);
+      return new Dimension(self.getWidth() - (insets.left + insets.right),
+            self.getHeight() - (insets.top + insets.bottom));
    }
 
    /**
@@ -491,163 +393,98 @@ public class BullsEyeLayout
       synchronized (self.getTreeLock())
       {
          checkContainer(self);
-         int ncomponents = self.getComponentCount();
-         if (ncomponents > 1)
-         {
-            throw new AWTError("BullsEyeLayout can hold only one component");
-         }
-         if (ncomponents == 0)
-            return;
-
-         Insets insets = self.getInsets();
-         int availableHeight;
-         int availableWidth;
-         if (self.getParent() instanceof JViewport)
-         {
-            JViewport vp = (JViewport) self.getParent();
-            availableHeight = vp.getHeight() - (insets.top + insets.bottom);
-            availableWidth = vp.getWidth() - (insets.left + insets.right);
-         }
-         else
-         {
-            availableHeight = self.getHeight() - (insets.top + insets.bottom);
-            availableWidth = self.getWidth() - (insets.left + insets.right);
-         }
-
-         int h = availableHeight;
-         int w = availableWidth;
-         int hmin = 0;
-         int hmax = Integer.MAX_VALUE;
-         int wmin = 0;
-         int wmax = Integer.MAX_VALUE;
-
-         Component comp = self.getComponent(0);
-         Dimension dmin;
-         Dimension dmax;
-         /*
-          * In case Component is Container with Layout instance of TrainLayout
-          * or TotemLayout the dimensions derived by content - if any - should
-          * override given Dimensions. Only when there is no content the given
-          * Dimensions should be used.
-          */
-         if (comp instanceof Container && (((Container) comp)
-               .getLayout() instanceof TotemLayout
-               || ((Container) comp).getLayout() instanceof TrainLayout
-               || ((Container) comp).getLayout() instanceof BullsEyeLayout))
-         {
-            Dimension dminContent = ((LayoutManager2) ((Container) comp)
-                  .getLayout()).minimumLayoutSize((Container) comp);
-            if (dminContent != null)
-               dmin = dminContent;
-            else
-               dmin = comp.getMinimumSize();
-
-            Dimension dmaxContent = ((LayoutManager2) ((Container) comp)
-                  .getLayout()).maximumLayoutSize((Container) comp);
-            if (dmaxContent != null)
-               dmax = dmaxContent;
-            else
-               dmax = comp.getMaximumSize();
-         }
-         else
-         {
-            dmin = comp.getMinimumSize();
-            dmax = comp.getMaximumSize();
-         }
-
-         // MINIMUM
-         if (dmin != null)
-         {
-            if (dmin.height > hmin)
-               hmin = dmin.height; // minheight is maximized
-            if (dmin.width > wmin)
-               wmin = dmin.width; // minwidth is maximized
-         }
-         else // minimum was not set on innermost layer
-         {
-            // w = w;
-         }
-
-         // MAXIMUM
-         if (dmax != null)
-         {
-            if (dmax.height < hmax)
-               hmax = dmax.height; // maxheight is minimized
-            if (dmax.width < wmax)
-               wmax = dmax.width; // maxwidth is minimized
-         }
-         else // maximum was not set on innermost layer
-         {
-            // w = w;
-         }
-
-         // height
-         if (hmin > hmax)
-         {
-            // error correction
-            hmax = hmin;
-         }
-
-         if (hmax != Integer.MAX_VALUE)
-         {
-            if (h <= hmin)
-               h = hmin;
-            else if (hmax < h)
-               h = hmax;
-            // else h = h;
-         }
-         else if (h < hmin)
-            h = hmin;
-         // else h = h;
+         checkResized(self);
+         TOnionListener listener = TOnionInstrumentation.getListener();
+         TOnionMeasurement m = listener == null ? null
+               : engine.startMeasurement(listener, Operation.LAYOUT, self);
+         placeComponent(self);
+         if (m != null)
+            engine.finishMeasurement(listener, Operation.LAYOUT, self, m,
+                  false);
+      }
+   }
 
-         // width
-         if (wmin > wmax)
-         {
-            // error correction
-            wmax = wmin;
-         }
+   /**
+    * Places the component in the center of the container, see
+    * layoutContainer(Container).
+    */
+   private void placeComponent(Container self)
+   {
+      int ncomponents = self.getComponentCount();
+      if (ncomponents > 1)
+      {
+         throw new AWTError("BullsEyeLayout can hold only one component");
+      }
+      if (ncomponents == 0 || OnionLayoutEngine.isParked(self)
+            || TOnionClipping.defer(self))
+         return;
+
+      Insets insets = engine.getInsets(self);
+      int availableHeight;
+      int availableWidth;
+      if (self.getParent() instanceof JViewport)
+      {
+         JViewport vp = (JViewport) self.getParent();
+         availableHeight = vp.getHeight() - (insets.top + insets.bottom);
+         availableWidth = vp.getWidth() - (insets.left + insets.right);
+      }
+      else
+      {
+         availableHeight = self.getHeight() - (insets.top + insets.bottom);
+         availableWidth = self.getWidth() - (insets.left + insets.right);
+      }
 
-         if (wmax != Integer.MAX_VALUE)
-         {
-            if (w <= wmin)
-               w = wmin;
-            else if (wmax < w)
-               w = wmax;
-            // else w = w;
-         }
-         else if (w < wmin)
-            w = wmin;
-         // else w = w;
+      int hmin = 0;
+      int hmax = Integer.MAX_VALUE;
+      int wmin = 0;
+      int wmax = Integer.MAX_VALUE;
+      engine.cacheMinimumSizes(self, ncomponents);
+      engine.cacheMaximumSizes(self, ncomponents);
+      if (engine.hasMinimumSize(0))
+      {
+         wmin = Math.max(0, engine.getMinimumWidth(0));
+         hmin = Math.max(0, engine.getMinimumHeight(0));
+      }
+      if (engine.hasMaximumSize(0))
+      {
+         wmax = engine.getMaximumWidth(0);
+         hmax = engine.getMaximumHeight(0);
+      }
+      int w = OnionLayoutEngine.clamp(availableWidth, wmin, wmax);
+      int h = OnionLayoutEngine.clamp(availableHeight, hmin, hmax);
 
-         int x = insets.left;
-         int y = insets.top;
-         int deltaX = (availableWidth - w) / 2 + x;
-         int deltaY = (availableHeight - h) / 2 + y;
+      Component comp = self.getComponent(0);
+      int x = insets.left;
+      int y = insets.top;
+      int deltaX = (availableWidth - w) / 2 + x;
+      int deltaY = (availableHeight - h) / 2 + y;
 
-         comp.setBounds(Math.max(x, deltaX), Math.max(y, deltaY), w, h);
+      engine.setBounds(comp, Math.max(x, deltaX), Math.max(y, deltaY), w,
+            h);
 
-         if (LayoutMode.TEST_BULLS_EYE == this.mode)
-         {
-            System.out.println("");
-            System.out.println(testname + " with BullsEyeLayout");
-            System.out.println("available width: " + availableWidth);
-            System.out.println("available height: " + availableHeight);
-            System.out.println("space left: " + Math.max(x, deltaX));
-            System.out.println("space top: " + Math.max(y, deltaY));
-            System.out.println("component width: " + w);
-            System.out.println("component height: " + h);
-            System.out.println("component min width: " + wmin);
-            System.out.println("component max width: " + wmax);
-            System.out.println("component min height: " + hmin);
-            System.out.println("component max height: " + hmax);
-            System.out.println("");
-         }
+      if (LayoutMode.TEST_BULLS_EYE == this.mode)
+      {
+         System.out.println("");
+         System.out.println(testname + " with BullsEyeLayout");
+         System.out.println("available width: " + availableWidth);
+         System.out.println("available height: " + availableHeight);
+         System.out.println("space left: " + Math.max(x, deltaX));
+         System.out.println("space top: " + Math.max(y, deltaY));
+         System.out.println("component width: " + w);
+         System.out.println("component height: " + h);
+         System.out.println("component min width: " + wmin);
+         System.out.println("component max width: "
+               + Math.max(wmin, wmax));
+         System.out.println("component min height: " + hmin);
+         System.out.println("component max height: "
+               + Math.max(hmin, hmax));
+         System.out.println("");
       }
    }
 
    /**
-    * invalidates Layout, minimum and maximum sizes of content will be
-    * recalculated
+    * minimum and maximum sizes of content will be recalculated, only the sizes
+    * of the added or removed component are queried again
     * 
     * @param name
     *           the name of the component
@@ -657,12 +494,15 @@ public class BullsEyeLayout
    @Override
    public void addLayoutComponent(String name, Component comp)
    {
-      invalidateLayout(comp.getParent());
+      Container self = comp.getParent();
+      checkContainer(self);
+      this.engine.componentAdded(self, comp);
+      discardContentSize(self);
    }
 
    /**
-    * invalidates Layout, minimum and maximum sizes of content will be
-    * recalculated
+    * minimum and maximum sizes of content will be recalculated, only the sizes
+    * of the added or removed component are queried again
     *
     * @param name
     *           the name of the component
@@ -672,12 +512,15 @@ public class BullsEyeLayout
    @Override
    public void addLayoutComponent(Component comp, Object constraints)
    {
-      invalidateLayout(comp.getParent());
+      Container self = comp.getParent();
+      checkContainer(self);
+      this.engine.componentAdded(self, comp);
+      discardContentSize(self);
    }
 
    /**
-    * invalidates Layout, minimum and maximum sizes of content will be
-    * recalculated
+    * minimum and maximum sizes of content will be recalculated, only the sizes
+    * of the added or removed component are queried again
     * 
     * @param comp
     *           the component to be removed
@@ -685,27 +528,53 @@ public class BullsEyeLayout
    @Override
    public void removeLayoutComponent(Component comp)
    {
-      invalidateLayout(comp.getParent());
+      Container self = comp.getParent();
+      checkContainer(self);
+      this.engine.componentRemoved(self, comp);
+      discardContentSize(self);
    }
 
    /**
     * Invalidates the layout, indicating that if the layout manager has cached
-    * information it should be discarded.
+    * information it should be discarded. Resizing the container alone
+    * invalidates it as well, then the remembered sizes are kept.
     */
    @Override
    public void invalidateLayout(Container self)
    {
       checkContainer(self);
+      if (engine.isResize(self))
+         return;
+      this.engine.invalidate();
+      discardContentSize(self);
+   }
+
+   /**
+    * Discards the minimum and maximum size of the content if a component
+    * became invalid while the container was resized, see
+    * OnionLayoutEngine.isResize(Container).
+    */
+   private void checkResized(Container self)
+   {
+      if (engine.checkResized(self))
+         discardContentSize(self);
+   }
+
+   /**
+    * Discards the minimum and maximum size of the content and passes the
+    * invalidation on to the layer above, unless it is still dirty.
+    */
+   private void discardContentSize(Container self)
+   {
       this.dimMin = null;
       this.dimMax = null;
-      if (self.getParent() != null && self.getParent().getLayout() != null
-            && (self.getParent().getLayout() instanceof TotemLayout
-                  || self.getParent().getLayout() instanceof TrainLayout
-                  || self.getParent().getLayout() instanceof BullsEyeLayout))
-      {
-         ((LayoutManager2) self.getParent().getLayout())
-               .invalidateLayout(self.getParent());
-      }
+      TOnionListener listener = TOnionInstrumentation.getListener();
+      if (listener != null)
+         listener.invalidated(self);
+      if (dirty)
+         return;
+      dirty = true;
+      OnionLayoutEngine.invalidateParent(self);
    }
 
    /**
@@ -732,6 +601,26 @@ public class BullsEyeLayout
       return 0;
    }
 
+   /**
+    * Returns the engine, for TOnionSnapshot.
+    */
+   OnionLayoutEngine getEngine()
+   {
+      return engine;
+   }
+
+   /**
+    * Restores the minimum and maximum size of the content from a
+    * TOnionSnapshot. The layers above have been restored as well, so they
+    * are not dirty.
+    */
+   void restoreContentSize(Dimension min, Dimension max)
+   {
+      this.dimMin = min;
+      this.dimMax = max;
+      this.dirty = false;
+   }
+
    private void checkContainer(Container self)
    {
       if (this.self != self)
@@ -739,4 +628,4 @@ public class BullsEyeLayout
          throw new AWTError("BullsEyeLayout can't be shared");
       }
    }
-}
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+/**
+ * The ways <code>TotemLayout</code> and <code>TrainLayout</code> can
+ * distribute the available space along the main axis among their components.
+ * <p>
+ * All modes observe the minimum and maximum size of each component. If the
+ * available space is less than the sum of the minimum sizes, every component
+ * gets its minimum size, if it is more than the sum of the maximum sizes,
+ * every component gets its maximum size.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+public enum DistributionMode
+{
+   /**
+    * The space is divided according to the relative minimum sizes, what is
+    * left over according to how far each component is still away from its
+    * maximum size, and the rest lost to rounding from back to front. The
+    * shares are computed with float arithmetic. This is the distribution of
+    * TOnion 3.0 and the default.
+    */
+   PROPORTIONAL,
+
+   /**
+    * The space is divided like PROPORTIONAL, but with integer arithmetic.
+    * Each share is rounded so that the shares so far add up exactly, so no
+    * space is lost to rounding and the result does not depend on float
+    * rounding.
+    */
+   EXACT,
+
+   /**
+    * The components are filled up to a common level: each gets level times
+    * its minimum size, but no more than its maximum size, and the level is
+    * raised until the space is used up. The space is always allocated in full
+    * unless every component is at its maximum size, and no component is
+    * favored by its position. The components are sorted in O(n log n) when
+    * their sizes change; as long as every component has a minimum and
+    * maximum size, a layout for another size then only takes O(n).
+    */
+   WATER_FILLING
+}
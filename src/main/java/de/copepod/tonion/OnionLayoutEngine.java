@@ -0,0 +1,2323 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Insets;
+import java.awt.LayoutManager;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+
+/**
+ * The <code>OnionLayoutEngine</code> does the work for
+ * <code>TotemLayout</code>, <code>TrainLayout</code> and
+ * <code>BullsEyeLayout</code>.
+ * <p>
+ * <code>TotemLayout</code> and <code>TrainLayout</code> are the same layout
+ * along different axes. The components are lined up along the main axis, which
+ * is vertical for <code>TotemLayout</code> and horizontal for
+ * <code>TrainLayout</code>. The available space along the main axis is
+ * distributed among the components. Along the cross axis all components get
+ * the same size. <code>BullsEyeLayout</code> only uses the size queries and
+ * the cross axis rules of the engine, for both axes.
+ * <p>
+ * Each layout owns one engine. The engine remembers the minimum and maximum
+ * size of each component and the last distributions, until the layout is
+ * invalidated. Therefore an engine can not be shared.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+final class OnionLayoutEngine implements java.io.Serializable
+{
+   /*
+    * serialVersionUID
+    */
+   private static final long serialVersionUID = -1848035187403517211L;
+
+   /**
+    * This determines whether the main axis is vertical (TotemLayout) or
+    * horizontal (TrainLayout).
+    */
+   private final boolean vertical;
+
+   /**
+    * This is the way the available space along the main axis is distributed.
+    */
+   private DistributionMode distributionMode = DistributionMode.PROPORTIONAL;
+
+   /**
+    * The engine remembers the minimum and maximum sizes of each component, so
+    * that a layout pass only has to distribute the available space. When the
+    * layout is invalidated the tables are marked dirty, and each component is
+    * checked against its entry before the table is used again. Only changed
+    * entries are updated, the sum along the main axis and the largest and
+    * smallest size along the cross axis are kept up to date with them. An
+    * added component gets a new entry that is queried when the table is used
+    * next, a removed component takes its entry with it.
+    */
+   private transient Sizes minimum;
+   private transient Sizes maximum;
+
+   /**
+    * The engine remembers the last distributions of the available space, see
+    * distribute(Container, int, int, int).
+    */
+   private transient Distribution[] distributions;
+   private transient int nextDistribution;
+
+   /**
+    * These are scratch buffers for the distribution of the available space.
+    */
+   private transient Scratch scratch;
+
+   /**
+    * The engine remembers the breakpoints of DistributionMode.WATER_FILLING
+    * until a component size changes, see Breakpoints.
+    */
+   private transient Breakpoints breakpoints;
+
+   /**
+    * The engine fills in the insets of its container here, if possible. See
+    * getInsets(Container).
+    */
+   private transient Insets insets;
+   private transient int insetsReusable;
+
+   /**
+    * The engine counts the components it asked for their sizes and the
+    * components whose bounds it changed, for TOnionInstrumentation.
+    */
+   private transient int queries;
+   private transient int boundsSet;
+
+   /**
+    * The rows first to last are the components placed by the last pass of
+    * layoutVisible, top to bottom is the part of the container along the
+    * main axis they cover. All other components are parked with an empty
+    * size at their position. windowed is false after a full layout pass or
+    * when components were added or removed, then any component may have
+    * bounds.
+    */
+   private transient boolean windowed;
+   private transient int placedFirst;
+   private transient int placedLast;
+   private transient int placedTop;
+   private transient int placedBottom;
+
+   /**
+    * The components parked by layoutVisible, valid while windowed is true.
+    * Their positions were computed for the available size along the main
+    * axis, the start and the gap given here, parkedValid is false when the
+    * distributions were discarded since then.
+    */
+   private transient Map<Component, Boolean> parked;
+   private transient boolean parkedValid;
+   private transient int parkedMain;
+   private transient int parkedStart;
+   private transient int parkedGap;
+
+   /**
+    * The size of the container when its layout was last invalidated, -1
+    * before. resized is true if the container was resized since then and its
+    * components have not been checked yet, see isResize(Container).
+    */
+   private transient int seenWidth = -1;
+   private transient int seenHeight = -1;
+   private transient boolean resized;
+
+   /**
+    * Creates an engine.
+    *
+    * @param vertical
+    *           true if the main axis is vertical, false if it is horizontal
+    */
+   OnionLayoutEngine(boolean vertical)
+   {
+      this.vertical = vertical;
+   }
+
+   /**
+    * Gets the way the available space along the main axis is distributed.
+    *
+    * @return the distribution mode
+    */
+   DistributionMode getDistributionMode()
+   {
+      return distributionMode;
+   }
+
+   /**
+    * Sets the way the available space along the main axis is distributed, the
+    * remembered distributions are discarded.
+    *
+    * @param distributionMode
+    *           the distribution mode
+    */
+   void setDistributionMode(DistributionMode distributionMode)
+   {
+      if (distributionMode == null)
+         throw new IllegalArgumentException(
+               "the distribution mode can not be null");
+      this.distributionMode = distributionMode;
+      discardDistributions();
+   }
+
+   /**
+    * Marks the remembered component sizes dirty, they are checked against the
+    * components before they are used next. The remembered distributions are
+    * kept unless a component size turns out to have changed.
+    */
+   void invalidate()
+   {
+      if (minimum != null)
+         minimum.dirty = true;
+      if (maximum != null)
+         maximum.dirty = true;
+   }
+
+   /**
+    * Tells whether an invalidation of the layout only comes from resizing the
+    * container. <code>Component.reshape</code> invalidates a container with a
+    * peer whenever its size changes, although its components did not change,
+    * so the remembered sizes are kept.
+    * <p>
+    * While the container is invalid, Swing does not pass on the invalidation
+    * of its components. The components that are invalid when the sizes are
+    * used next are therefore checked again, see checkResized(Container).
+    * Without a peer a resize does not invalidate, and if a component has no
+    * minimum or maximum size the sizes depend on the size of the container,
+    * in these cases every invalidation discards the sizes.
+    *
+    * @param self
+    *           the container whose layout is invalidated
+    * @return true if only the size of the container changed
+    */
+   boolean isResize(Container self)
+   {
+      int width = self.getWidth();
+      int height = self.getHeight();
+      boolean resize = seenWidth >= 0
+            && (width != seenWidth || height != seenHeight);
+      seenWidth = width;
+      seenHeight = height;
+      if (!resize || !self.isDisplayable() || minimum == null
+            || maximum == null || minimum.unset > 0 || maximum.unset > 0)
+         return false;
+      resized = true;
+      return true;
+   }
+
+   /**
+    * Checks the components after the container was resized, see
+    * isResize(Container). The sizes of the components that became invalid
+    * meanwhile are checked when they are used next.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @return true if a component is invalid, the minimum and maximum size of
+    *         the content may have changed
+    */
+   boolean checkResized(Container self)
+   {
+      if (!resized)
+         return false;
+      resized = false;
+      boolean invalid = false;
+      int ncomponents = self.getComponentCount();
+      for (int i = 0; i < ncomponents; i++)
+      {
+         if (!self.getComponent(i).isValid())
+         {
+            markPending(i);
+            invalid = true;
+         }
+      }
+      return invalid;
+   }
+
+   /**
+    * Inserts an entry for a component that has just been added to the
+    * container. Its sizes are queried when they are needed, the sizes of the
+    * other components are kept.
+    *
+    * @param self
+    *           the container the component was added to
+    * @param comp
+    *           the component
+    */
+   void componentAdded(Container self, Component comp)
+   {
+      int ncomponents = self.getComponentCount();
+      int index = indexOf(self, comp);
+      if (minimum != null)
+      {
+         if (index >= 0 && minimum.count == ncomponents - 1)
+            minimum.insert(index);
+         else
+            minimum.count = -1; // queried again when used
+      }
+      if (maximum != null)
+      {
+         if (index >= 0 && maximum.count == ncomponents - 1)
+            maximum.insert(index);
+         else
+            maximum.count = -1; // queried again when used
+      }
+      windowed = false;
+      discardDistributions();
+   }
+
+   /**
+    * Removes the entry of a component that is about to be removed from the
+    * container. The sizes of the other components are kept.
+    * <p>
+    * <code>Container.removeAll()</code> removes the component before it tells
+    * the layout, in that case all sizes are queried again when needed.
+    *
+    * @param self
+    *           the container the component is removed from
+    * @param comp
+    *           the component
+    */
+   void componentRemoved(Container self, Component comp)
+   {
+      int ncomponents = self.getComponentCount();
+      int index = indexOf(self, comp);
+      if (minimum != null)
+      {
+         if (index >= 0 && minimum.count == ncomponents)
+            minimum.remove(index);
+         else
+            minimum.count = -1; // queried again when used
+      }
+      if (maximum != null)
+      {
+         if (index >= 0 && maximum.count == ncomponents)
+            maximum.remove(index);
+         else
+            maximum.count = -1; // queried again when used
+      }
+      if (parked != null)
+         parked.remove(comp);
+      windowed = false;
+      discardDistributions();
+   }
+
+   /**
+    * Finds a component in the container, looking at the last component first
+    * since forms are mostly built by appending.
+    *
+    * @return the index of the component, -1 if it is not in the container
+    */
+   private static int indexOf(Container self, Component comp)
+   {
+      int ncomponents = self.getComponentCount();
+      if (ncomponents > 0 && self.getComponent(ncomponents - 1) == comp)
+         return ncomponents - 1;
+      if (comp.getParent() != self)
+         return -1;
+      return self.getComponentZOrder(comp);
+   }
+
+   /**
+    * Determines the minimum size of a container whose components are lined up
+    * along the main axis.
+    * <p>
+    * Along the main axis the minimum size is the sum of the minimum sizes of
+    * all components, plus the gaps and the insets. Along the cross axis it is
+    * the largest minimum size of all components plus the insets.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @param gap
+    *           the gap between components
+    * @return the minimum size, null if the container is empty
+    */
+   Dimension minimumLayoutSize(Container self, int gap)
+   {
+      int ncomponents = self.getComponentCount();
+      if (ncomponents == 0)
+         return null;
+
+      Insets insets = getInsets(self);
+      cacheMinimumSizes(self, ncomponents);
+      int main = minimum.getTotal(
+            (main(self.getWidth(), self.getHeight()) - mainInsets(insets))
+                  / ncomponents);
+      int cross = minimum.getLargestCross();
+      return dimension(mainInsets(insets) + main + (ncomponents - 1) * gap,
+            crossInsets(insets) + cross);
+   }
+
+   /**
+    * Determines the maximum size of a container whose components are lined up
+    * along the main axis.
+    * <p>
+    * Along the main axis the maximum size is the sum of the maximum sizes of
+    * all components, plus the gaps and the insets. Along the cross axis it is
+    * the smallest maximum size of all components plus the insets.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @param gap
+    *           the gap between components
+    * @return the maximum size, null if the container is empty
+    */
+   Dimension maximumLayoutSize(Container self, int gap)
+   {
+      int ncomponents = self.getComponentCount();
+      if (ncomponents == 0)
+         return null;
+
+      Insets insets = getInsets(self);
+      cacheMaximumSizes(self, ncomponents);
+      int main = maximum.getTotal(
+            (main(self.getWidth(), self.getHeight()) - mainInsets(insets))
+                  / ncomponents);
+      int cross = maximum.getSmallestCross();
+      return dimension(mainInsets(insets) + main + (ncomponents - 1) * gap,
+            crossInsets(insets) + cross);
+   }
+
+   /**
+    * Determines the preferred size of a non empty container whose components
+    * are lined up along the main axis, for the current size of the container.
+    * <p>
+    * The width of the returned dimension is the size along the main axis,
+    * starting at the leading inset and including a gap after each component,
+    * the height is the common size along the cross axis. TotemLayout and
+    * TrainLayout have always reported it that way.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @param gap
+    *           the gap between components
+    * @return the preferred size
+    */
+   Dimension preferredLayoutSize(Container self, int gap)
+   {
+      int ncomponents = self.getComponentCount();
+      Insets insets = getInsets(self);
+      int main = main(self.getWidth(), self.getHeight()) - mainInsets(insets)
+            - gap * (ncomponents - 1);
+      int cross = cross(self.getWidth(), self.getHeight())
+            - crossInsets(insets);
+
+      Distribution d = distribute(self, main, cross, ncomponents);
+      int total = main(insets.left, insets.top);
+      for (int i = 0; i < ncomponents; i++)
+      {
+         total += d.sizes[i] + gap;
+      }
+      return new Dimension(total, d.cross);
+   }
+
+   /**
+    * Lays out a non empty container whose components are lined up along the
+    * main axis.
+    * <p>
+    * Inside a JViewport the available space is the size of the viewport,
+    * otherwise the size of the container.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @param gap
+    *           the gap between components
+    * @return the distribution, which must not be modified
+    */
+   Distribution layoutContainer(Container self, int gap)
+   {
+      int ncomponents = self.getComponentCount();
+      Insets insets = getInsets(self);
+      Distribution d = distributeAvailable(self, insets, gap, ncomponents);
+
+      int position = main(insets.left, insets.top);
+      int crossPosition = cross(insets.left, insets.top);
+      for (int i = 0; i < ncomponents; i++)
+      {
+         Component comp = self.getComponent(i);
+         if (vertical)
+            setBounds(comp, crossPosition, position, d.cross, d.sizes[i]);
+         else
+            setBounds(comp, position, crossPosition, d.sizes[i], d.cross);
+         position += d.sizes[i] + gap;
+      }
+      windowed = false;
+      return d;
+   }
+
+   /**
+    * Lays out a non empty container inside a JViewport like
+    * layoutContainer(Container, int), but only places the components that
+    * can be seen in the viewport or are less than half a viewport away from
+    * it. All other components are parked with an empty size at their
+    * position, Swing neither paints them nor lays out their content, see
+    * isParked(Container). Focus traversal and scrolling to a parked component
+    * still find it in its place.
+    * <p>
+    * The visible components are found by a binary search in the positions of
+    * the distribution. Components placed by the last pass and no longer near
+    * the viewport are parked, the sizes of all components whose size changed
+    * are marked to be checked again, see markPlacedPending(). If the
+    * positions changed, all parked components are moved.
+    *
+    * @param self
+    *           the container in which to do the layout, the view of a
+    *           JViewport
+    * @param gap
+    *           the gap between components
+    * @return the distribution, which must not be modified
+    */
+   Distribution layoutVisible(Container self, int gap)
+   {
+      int ncomponents = self.getComponentCount();
+      Insets insets = getInsets(self);
+      Distribution d = distributeAvailable(self, insets, gap, ncomponents);
+      int start = main(insets.left, insets.top);
+      int[] offsets = d.offsets(start, gap);
+
+      // the view is moved to the negative view position
+      JViewport vp = (JViewport) self.getParent();
+      int visible = main(vp.getWidth(), vp.getHeight());
+      int top = -main(self.getX(), self.getY()) - visible / 2;
+      int bottom = top + 2 * visible;
+      int first = indexAt(offsets, ncomponents, top);
+      int last = indexAt(offsets, ncomponents, bottom);
+      int crossPosition = cross(insets.left, insets.top);
+
+      if (parked == null)
+         parked = new IdentityHashMap<Component, Boolean>();
+      if (!windowed)
+         parked.clear();
+      if (!windowed || !parkedValid || parkedMain != d.availableMain
+            || parkedStart != start || parkedGap != gap)
+      {
+         for (int i = 0; i < ncomponents; i++)
+         {
+            if (i < first || i > last)
+               park(self.getComponent(i), i, offsets[i], crossPosition);
+         }
+      }
+      else
+      {
+         for (int i = placedFirst; i <= placedLast && i < ncomponents; i++)
+         {
+            if (i < first || i > last)
+               park(self.getComponent(i), i, offsets[i], crossPosition);
+         }
+      }
+      for (int i = first; i <= last; i++)
+      {
+         Component comp = self.getComponent(i);
+         parked.remove(comp);
+         if (place(comp, offsets[i], crossPosition, d.sizes[i], d.cross))
+            markPending(i);
+      }
+      parkedValid = true;
+      parkedMain = d.availableMain;
+      parkedStart = start;
+      parkedGap = gap;
+      windowed = true;
+      placedFirst = first;
+      placedLast = last;
+      placedTop = top;
+      placedBottom = bottom;
+      return d;
+   }
+
+   /**
+    * Finds the component at a position along the main axis, for the space
+    * available in the container now, see layoutContainer(Container, int).
+    * The positions of the components are computed once for each distribution,
+    * the component is found by a binary search.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @param gap
+    *           the gap between components
+    * @param position
+    *           the position along the main axis
+    * @return the index of the component, -1 if the position is in a gap, in
+    *         the insets or outside of all components
+    */
+   int componentAt(Container self, int gap, int position)
+   {
+      int ncomponents = self.getComponentCount();
+      if (ncomponents == 0)
+         return -1;
+      Insets insets = getInsets(self);
+      Distribution d = distributeAvailable(self, insets, gap, ncomponents);
+      int[] offsets = d.offsets(main(insets.left, insets.top), gap);
+      int i = indexAt(offsets, ncomponents, position);
+      if (position < offsets[i] || position >= offsets[i] + d.sizes[i])
+         return -1;
+      return i;
+   }
+
+   /**
+    * Determines the position of a component along the main axis, for the
+    * space available in the container now, see layoutContainer(Container,
+    * int).
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @param gap
+    *           the gap between components
+    * @param index
+    *           the index of the component, the number of components for the
+    *           end of the last one
+    * @return the position along the main axis
+    * @exception IllegalArgumentException
+    *               if there is no such component
+    */
+   int componentOffset(Container self, int gap, int index)
+   {
+      int ncomponents = self.getComponentCount();
+      if (index < 0 || index > ncomponents)
+         throw new IllegalArgumentException("no such component: " + index);
+      Insets insets = getInsets(self);
+      if (ncomponents == 0)
+         return main(insets.left, insets.top);
+      Distribution d = distributeAvailable(self, insets, gap, ncomponents);
+      return d.offsets(main(insets.left, insets.top), gap)[index];
+   }
+
+   /**
+    * Tells whether the components placed by the last pass of layoutVisible
+    * still cover the part of the container that can be seen in its
+    * viewport.
+    *
+    * @param self
+    *           the container in which to do the layout, the view of a
+    *           JViewport
+    * @return false if layoutVisible must place other components
+    */
+   boolean coversVisible(Container self)
+   {
+      if (!windowed)
+         return false;
+      JViewport vp = (JViewport) self.getParent();
+      int top = -main(self.getX(), self.getY());
+      return top >= placedTop
+            && top + main(vp.getWidth(), vp.getHeight()) <= placedBottom;
+   }
+
+   /**
+    * Marks the sizes of the components placed by the last pass of
+    * layoutVisible to be checked again. Their layouts were invalidated when
+    * they were placed and laid out, the layers in between are dirty until
+    * their sizes are queried.
+    */
+   void markPlacedPending()
+   {
+      if (!windowed)
+         return;
+      for (int i = placedFirst; i <= placedLast; i++)
+         markPending(i);
+   }
+
+   /**
+    * Finds the component at a position along the main axis.
+    *
+    * @param offsets
+    *           the position of each component and the end of the last one
+    * @param ncomponents
+    *           the number of components
+    * @param position
+    *           the position
+    * @return the last component that starts at or before the position, the
+    *         first component if none does
+    */
+   static int indexAt(int[] offsets, int ncomponents, int position)
+   {
+      int low = 0;
+      int high = ncomponents - 1;
+      while (low < high)
+      {
+         int mid = (low + high + 1) >>> 1;
+         if (offsets[mid] <= position)
+            low = mid;
+         else
+            high = mid - 1;
+      }
+      return low;
+   }
+
+   /**
+    * Tells whether a container was parked by layoutVisible, the pass of a
+    * virtualized TotemLayout around it. Such a container has an empty size
+    * and is not laid out, Swing neither shows it nor its components. This
+    * keeps the parked components cheap. Other containers with an empty size
+    * are laid out as usual, even in a virtualized TotemLayout.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @return true if the container is parked
+    */
+   static boolean isParked(Container self)
+   {
+      if (self.getWidth() > 0 && self.getHeight() > 0)
+         return false;
+      Container parent = self.getParent();
+      if (parent == null)
+         return false;
+      LayoutManager layout = parent.getLayout();
+      if (!(layout instanceof TotemLayout))
+         return false;
+      OnionLayoutEngine engine = ((TotemLayout) layout).getEngine();
+      return engine.windowed && engine.parked.containsKey(self);
+   }
+
+   /**
+    * Distributes the space available in the container, which is the size of
+    * the viewport inside a JViewport, otherwise the size of the container.
+    */
+   private Distribution distributeAvailable(Container self, Insets insets,
+         int gap, int ncomponents)
+   {
+      int width;
+      int height;
+      if (self.getParent() instanceof JViewport)
+      {
+         JViewport vp = (JViewport) self.getParent();
+         width = vp.getWidth();
+         height = vp.getHeight();
+      }
+      else
+      {
+         width = self.getWidth();
+         height = self.getHeight();
+      }
+      int availableMain = main(width, height) - mainInsets(insets)
+            - gap * (ncomponents - 1);
+      int availableCross = cross(width, height) - crossInsets(insets);
+      return distribute(self, availableMain, availableCross, ncomponents);
+   }
+
+   /**
+    * Places a component at a position along the main and the cross axis.
+    *
+    * @return true if the size of the component changed
+    */
+   private boolean place(Component comp, int position, int crossPosition,
+         int size, int crossSize)
+   {
+      int width = comp.getWidth();
+      int height = comp.getHeight();
+      if (vertical)
+         setBounds(comp, crossPosition, position, crossSize, size);
+      else
+         setBounds(comp, position, crossPosition, size, crossSize);
+      return comp.getWidth() != width || comp.getHeight() != height;
+   }
+
+   /**
+    * Parks component i with an empty size at its position along the main and
+    * the cross axis.
+    */
+   private void park(Component comp, int i, int position, int crossPosition)
+   {
+      if (comp.getWidth() != 0 || comp.getHeight() != 0)
+         markPending(i);
+      if (vertical)
+         setBounds(comp, crossPosition, position, 0, 0);
+      else
+         setBounds(comp, position, crossPosition, 0, 0);
+      parked.put(comp, Boolean.TRUE);
+   }
+
+   /**
+    * Marks the sizes of component i to be checked when they are used next.
+    */
+   private void markPending(int i)
+   {
+      minimum.markPending(i);
+      maximum.markPending(i);
+   }
+
+   /**
+    * Distributes the available space along the main axis among the
+    * components and determines the common size along the cross axis.
+    * <p>
+    * The engine remembers the results of the last two distributions. Live
+    * resizing tends to repeat or to alternate between the same sizes, in this
+    * case the remembered result is returned. The available sizes passed in are
+    * already reduced by the insets and the gaps, so together with the
+    * component sizes they determine the result. A remembered result for the
+    * same size along the main axis only gets the new size along the cross
+    * axis, its sizes and positions along the main axis are kept. The results
+    * are discarded when a component size changes.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @param main
+    *           the available size along the main axis
+    * @param cross
+    *           the available size along the cross axis
+    * @param ncomponents
+    *           the number of components
+    * @return the distribution, which must not be modified
+    */
+   Distribution distribute(Container self, int main, int cross,
+         int ncomponents)
+   {
+      // a changed component size discards the remembered distributions
+      cacheMinimumSizes(self, ncomponents);
+      cacheMaximumSizes(self, ncomponents);
+      if (distributions == null)
+      {
+         distributions = new Distribution[] { new Distribution(),
+               new Distribution() };
+      }
+      for (Distribution d : distributions)
+      {
+         if (d.count == ncomponents && d.availableMain == main
+               && d.availableCross == cross)
+            return d;
+      }
+      for (Distribution d : distributions)
+      {
+         // the sizes along the main axis do not depend on the cross axis
+         if (d.count == ncomponents && d.availableMain == main)
+         {
+            d.availableCross = cross;
+            d.cross = clamp(cross, d.minCross, d.maxCross);
+            return d;
+         }
+      }
+      Distribution d = distributions[nextDistribution];
+      nextDistribution = (nextDistribution + 1) % distributions.length;
+
+      if (scratch == null)
+         scratch = new Scratch();
+      if (distributionMode == DistributionMode.WATER_FILLING
+            && breakpoints == null)
+         breakpoints = new Breakpoints();
+      distribute(minimum, maximum, ncomponents, main, cross, distributionMode,
+            d, scratch, breakpoints);
+      return d;
+   }
+
+   /**
+    * Distributes the available space along the main axis among components
+    * with the given minimum and maximum sizes and determines the common size
+    * along the cross axis.
+    * <p>
+    * A component without minimum or maximum size gets the 1/nth of the
+    * available space instead.
+    *
+    * @param minimum
+    *           the minimum sizes of the components
+    * @param maximum
+    *           the maximum sizes of the components
+    * @param ncomponents
+    *           the number of components
+    * @param main
+    *           the available size along the main axis
+    * @param cross
+    *           the available size along the cross axis
+    * @param mode
+    *           the way the space along the main axis is distributed
+    * @param d
+    *           receives the distribution
+    * @param scratch
+    *           the scratch buffers to use
+    * @param breakpoints
+    *           the breakpoints remembered for the sizes, null if there are
+    *           none
+    */
+   static void distribute(Sizes minimum, Sizes maximum, int ncomponents,
+         int main, int cross, DistributionMode mode, Distribution d,
+         Scratch scratch, Breakpoints breakpoints)
+   {
+      d.count = 0;
+      d.offsetsCount = -1;
+      d.availableMain = main;
+      d.availableCross = cross;
+
+      scratch.ensureCapacity(ncomponents);
+      int[] min = scratch.min;
+      int[] max = scratch.max;
+      int crossMin = 0;
+      int crossMax = Integer.MAX_VALUE;
+      boolean allSet = true;
+      for (int i = 0; i < ncomponents; i++)
+      {
+         // MINIMUM
+         if (minimum.set[i])
+         {
+            if (minimum.cross[i] > crossMin)
+               crossMin = minimum.cross[i]; // min cross size is maximized
+            min[i] = minimum.main[i];
+         }
+         else // minimum was not set on innermost layer
+         {
+            min[i] = main / ncomponents;
+            allSet = false;
+         }
+         // MAXIMUM
+         if (maximum.set[i])
+         {
+            if (maximum.cross[i] < crossMax)
+               crossMax = maximum.cross[i]; // max cross size is minimized
+            max[i] = maximum.main[i];
+         }
+         else // maximum was not set on innermost layer
+         {
+            max[i] = main / ncomponents;
+            allSet = false;
+         }
+      }
+
+      if (d.sizes == null || d.sizes.length < ncomponents)
+         d.sizes = new int[ncomponents];
+      if (mode == DistributionMode.EXACT)
+         distributeExact(min, max, ncomponents, main, d.sizes);
+      else if (mode == DistributionMode.WATER_FILLING && breakpoints != null
+            && allSet)
+         breakpoints.distribute(min, max, ncomponents, main, d.sizes);
+      else if (mode == DistributionMode.WATER_FILLING)
+         distributeWaterFilling(min, max, ncomponents, main, d.sizes,
+               scratch.order());
+      else
+         distribute(min, max, ncomponents, main, d.sizes, scratch.difference);
+
+      d.cross = clamp(cross, crossMin, crossMax);
+      d.minCross = crossMin;
+      d.maxCross = Math.max(crossMin, crossMax);
+      d.count = ncomponents;
+   }
+
+   /**
+    * Distributes the available size among components with the given minimum
+    * and maximum sizes.
+    * <p>
+    * The available size is divided according to the relative sizes of the
+    * minimum sizes first. What is left over is dispensed according to how far
+    * each component is still away from its maximum size. The rest that is
+    * lost to rounding is dispensed from back to front. The minimum and maximum
+    * size of each component are observed, a maximum size that is less than the
+    * minimum size is corrected to the minimum size.
+    *
+    * @param min
+    *           the minimum size of each component
+    * @param max
+    *           the maximum size of each component, corrected in place
+    * @param ncomponents
+    *           the number of components
+    * @param available
+    *           the available size
+    * @param sizes
+    *           receives the size of each component
+    * @param difference
+    *           a scratch buffer for at least ncomponents values
+    */
+   static void distribute(int[] min, int[] max, int ncomponents,
+         int available, int[] sizes, int[] difference)
+   {
+      int mintotal = 0;
+      for (int i = 0; i < ncomponents; i++)
+      {
+         mintotal += min[i];
+      }
+      int compare = 0;
+      int differencetotal = 0;
+      for (int i = 0; i < ncomponents; i++)
+      {
+         if (max[i] < min[i])
+         {
+            // error correction
+            max[i] = min[i];
+         }
+         // allocating available size according to minimum sizes vs.
+         // mintotal
+         sizes[i] = (int) ((min[i] / (float) mintotal) * available);
+         if (min[i] > sizes[i])
+         {
+            sizes[i] = min[i];
+         }
+         else if (max[i] < sizes[i])
+         {
+            sizes[i] = max[i];
+         }
+         compare += sizes[i];
+         difference[i] = max[i] - sizes[i];
+         differencetotal += difference[i];
+      }
+      int leftover = available - compare;
+      // dispensing possible leftover according to difference vs.
+      // differencetotal
+      if (leftover > 0)
+      {
+         compare = 0;
+         for (int i = 0; i < ncomponents; i++)
+         {
+            sizes[i] += (int) ((difference[i] / (float) differencetotal)
+                  * leftover);
+            if (max[i] < sizes[i])
+            {
+               sizes[i] = max[i];
+            }
+            compare += sizes[i];
+         }
+      }
+      leftover = available - compare;
+      // dispensing possible leftover from back to front
+      if (leftover > 0)
+      {
+         for (int i = ncomponents - 1; i >= 0; i--)
+         {
+            int diff = max[i] - sizes[i];
+            if (diff > 0 && diff < leftover)
+            {
+               sizes[i] = max[i];
+               leftover -= diff;
+            }
+            else if (diff > 0)
+            {
+               sizes[i] += leftover;
+               break;
+            }
+         }
+      }
+   }
+
+   /**
+    * Distributes the available size among components with the given minimum
+    * and maximum sizes like distribute(int[], int[], int, int, int[], int[]),
+    * but with integer arithmetic.
+    * <p>
+    * Each share is the difference of the rounded down running totals, so the
+    * shares always add up to the rounded down total. What is left over after
+    * the division according to the minimum sizes is dispensed the same way
+    * according to how far each component is still away from its maximum size,
+    * which leaves nothing to be dispensed from back to front.
+    *
+    * @param min
+    *           the minimum size of each component
+    * @param max
+    *           the maximum size of each component, corrected in place
+    * @param ncomponents
+    *           the number of components
+    * @param available
+    *           the available size
+    * @param sizes
+    *           receives the size of each component
+    */
+   static void distributeExact(int[] min, int[] max, int ncomponents,
+         int available, int[] sizes)
+   {
+      long mintotal = 0;
+      for (int i = 0; i < ncomponents; i++)
+      {
+         mintotal += min[i];
+      }
+      long total = 0;
+      long differencetotal = 0;
+      long running = 0;
+      long share = 0;
+      for (int i = 0; i < ncomponents; i++)
+      {
+         if (max[i] < min[i])
+         {
+            // error correction
+            max[i] = min[i];
+         }
+         // allocating available size according to minimum sizes vs.
+         // mintotal
+         int size = 0;
+         if (mintotal > 0 && available > 0)
+         {
+            running += min[i];
+            long next = scale(running, available, mintotal);
+            size = (int) (next - share);
+            share = next;
+         }
+         sizes[i] = clamp(size, min[i], max[i]);
+         total += sizes[i];
+         differencetotal += max[i] - sizes[i];
+      }
+      long leftover = available - total;
+      if (leftover <= 0)
+         return;
+      // dispensing leftover according to difference vs. differencetotal, all
+      // components reach their maximum size if there is enough
+      if (leftover >= differencetotal)
+      {
+         for (int i = 0; i < ncomponents; i++)
+            sizes[i] = max[i];
+         return;
+      }
+      running = 0;
+      share = 0;
+      for (int i = 0; i < ncomponents; i++)
+      {
+         running += max[i] - sizes[i];
+         long next = scale(running, leftover, differencetotal);
+         sizes[i] += (int) (next - share);
+         share = next;
+      }
+   }
+
+   /**
+    * Distributes the available size among components with the given minimum
+    * and maximum sizes by filling them up to a common level.
+    * <p>
+    * Each component gets level * weight within its minimum and maximum size,
+    * the weight is the minimum size, or 1 without minimum size. The level is
+    * raised until the available size is used up: components reach their
+    * maximum size in the order of maximum / weight, the others share the rest
+    * according to their weights. The shares are rounded so that they add up
+    * exactly. All available size is allocated unless every component reaches
+    * its maximum size. Sorting the components by maximum / weight takes
+    * O(n log n), everything else O(n).
+    *
+    * @param min
+    *           the minimum size of each component
+    * @param max
+    *           the maximum size of each component, corrected in place
+    * @param ncomponents
+    *           the number of components
+    * @param available
+    *           the available size
+    * @param sizes
+    *           receives the size of each component
+    * @param order
+    *           a scratch buffer for at least ncomponents values
+    */
+   static void distributeWaterFilling(int[] min, int[] max, int ncomponents,
+         int available, int[] sizes, int[] order)
+   {
+      long mintotal = 0;
+      long maxtotal = 0;
+      long levelOne = 0; // the total at level 1
+      for (int i = 0; i < ncomponents; i++)
+      {
+         if (max[i] < min[i])
+         {
+            // error correction
+            max[i] = min[i];
+         }
+         sizes[i] = min[i];
+         mintotal += min[i];
+         maxtotal += max[i];
+         levelOne += Math.min(weight(min, i), max[i]);
+      }
+      if (available <= mintotal)
+         return;
+      if (available >= maxtotal)
+      {
+         System.arraycopy(max, 0, sizes, 0, ncomponents);
+         return;
+      }
+      if (available <= levelOne)
+      {
+         fillBelowLevelOne(min, max, ncomponents, available - mintotal,
+               sizes);
+         return;
+      }
+
+      // above level 1 the components that are at their maximum size already
+      // are fixed, the others are sorted by the level of their maximum size
+      long fixed = 0;
+      long weights = 0;
+      int active = 0;
+      for (int i = 0; i < ncomponents; i++)
+      {
+         if (max[i] <= weight(min, i))
+         {
+            sizes[i] = max[i];
+            fixed += max[i];
+         }
+         else
+         {
+            order[active++] = i;
+            weights += weight(min, i);
+         }
+      }
+      sortByMaximumLevel(order, active, min, max);
+      int capped = 0;
+      while (capped < active)
+      {
+         // the level (available - fixed) / weights is above the level of
+         // the next maximum size, that component is fixed at its maximum
+         int i = order[capped];
+         if (compare(available - fixed, weight(min, i), max[i], weights) <= 0)
+            break;
+         sizes[i] = max[i];
+         fixed += max[i];
+         weights -= weight(min, i);
+         capped++;
+      }
+      for (int k = capped; k < active; k++)
+      {
+         // marks the components below the level
+         sizes[order[k]] = Integer.MIN_VALUE;
+      }
+      long rest = available - fixed;
+      long running = 0;
+      long share = 0;
+      for (int i = 0; i < ncomponents; i++)
+      {
+         if (sizes[i] == Integer.MIN_VALUE)
+         {
+            running += weight(min, i);
+            long next = scale(running, rest, weights);
+            sizes[i] = (int) (next - share);
+            share = next;
+         }
+      }
+   }
+
+   /**
+    * Spreads what is left over at the minimum sizes evenly among the
+    * components without minimum size, one each at most, which is all
+    * distributeWaterFilling does below level 1.
+    *
+    * @param extra
+    *           the size left over, less than the number of components
+    *           without minimum size
+    * @param sizes
+    *           holds the minimum size of each component, receives the size
+    */
+   private static void fillBelowLevelOne(int[] min, int[] max,
+         int ncomponents, long extra, int[] sizes)
+   {
+      long count = 0;
+      for (int i = 0; i < ncomponents; i++)
+      {
+         if (min[i] == 0 && max[i] > 0)
+            count++;
+      }
+      long running = 0;
+      long share = 0;
+      for (int i = 0; i < ncomponents; i++)
+      {
+         if (min[i] == 0 && max[i] > 0)
+         {
+            long next = scale(++running, extra, count);
+            sizes[i] += (int) (next - share);
+            share = next;
+         }
+      }
+   }
+
+   /**
+    * Returns the weight of component i for distributeWaterFilling, its
+    * minimum size, at least 1.
+    */
+   private static int weight(int[] min, int i)
+   {
+      return Math.max(min[i], 1);
+   }
+
+   /**
+    * Sorts the first n indices of order by the level max / weight at which
+    * the component reaches its maximum size, with a heap sort, which needs no
+    * extra buffer.
+    */
+   private static void sortByMaximumLevel(int[] order, int n, int[] min,
+         int[] max)
+   {
+      for (int i = n / 2 - 1; i >= 0; i--)
+         siftDown(order, i, n, min, max);
+      for (int end = n - 1; end > 0; end--)
+      {
+         int top = order[0];
+         order[0] = order[end];
+         order[end] = top;
+         siftDown(order, 0, end, min, max);
+      }
+   }
+
+   private static void siftDown(int[] order, int i, int n, int[] min,
+         int[] max)
+   {
+      int item = order[i];
+      while (true)
+      {
+         int child = 2 * i + 1;
+         if (child >= n)
+            break;
+         if (child + 1 < n
+               && levelOrder(order[child + 1], order[child], min, max) > 0)
+            child++;
+         if (levelOrder(order[child], item, min, max) <= 0)
+            break;
+         order[i] = order[child];
+         i = child;
+      }
+      order[i] = item;
+   }
+
+   /**
+    * Compares the levels max / weight of components a and b.
+    */
+   private static int levelOrder(int a, int b, int[] min, int[] max)
+   {
+      return Long.compare((long) max[a] * weight(min, b),
+            (long) max[b] * weight(min, a));
+   }
+
+   /**
+    * Compares a * b with c * d for non negative values, even if the products
+    * do not fit into a long.
+    */
+   static int compare(long a, long b, long c, long d)
+   {
+      if ((b == 0 || a <= Long.MAX_VALUE / b)
+            && (d == 0 || c <= Long.MAX_VALUE / d))
+         return Long.compare(a * b, c * d);
+      return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b))
+            .compareTo(BigInteger.valueOf(c).multiply(BigInteger.valueOf(d)));
+   }
+
+   /**
+    * Computes part * value / total rounded down, for 0 &lt;= part &lt;= total
+    * and value &gt; 0, even if the product does not fit into a long.
+    */
+   static long scale(long part, long value, long total)
+   {
+      if (part <= Long.MAX_VALUE / value)
+         return part * value / total;
+      return BigInteger.valueOf(part).multiply(BigInteger.valueOf(value))
+            .divide(BigInteger.valueOf(total)).longValue();
+   }
+
+   /**
+    * Fits a size into a minimum and maximum size. A maximum size that is less
+    * than the minimum size is corrected to the minimum size.
+    *
+    * @param size
+    *           the available size
+    * @param min
+    *           the minimum size
+    * @param max
+    *           the maximum size, Integer.MAX_VALUE if there is none
+    * @return the size within min and max
+    */
+   static int clamp(int size, int min, int max)
+   {
+      if (size <= min)
+         return min;
+      if (max < size && min < max)
+         return max;
+      if (max < size)
+         return min; // error correction, max = min
+      return size;
+   }
+
+   /**
+    * Queries the minimum sizes of all components and remembers them until the
+    * layout is invalidated. After that each component is checked against the
+    * remembered size, only a change discards the remembered distributions.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @param ncomponents
+    *           the number of components
+    */
+   void cacheMinimumSizes(Container self, int ncomponents)
+   {
+      if (minimum == null)
+         minimum = new Sizes();
+      if (minimum.count == ncomponents && !minimum.dirty
+            && minimum.pendingCount == 0)
+         return;
+      if (update(minimum, self, ncomponents, true))
+         discardDistributions();
+   }
+
+   /**
+    * Queries the maximum sizes of all components and remembers them until the
+    * layout is invalidated. After that each component is checked against the
+    * remembered size, only a change discards the remembered distributions.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @param ncomponents
+    *           the number of components
+    */
+   void cacheMaximumSizes(Container self, int ncomponents)
+   {
+      if (maximum == null)
+         maximum = new Sizes();
+      if (maximum.count == ncomponents && !maximum.dirty
+            && maximum.pendingCount == 0)
+         return;
+      if (update(maximum, self, ncomponents, false))
+         discardDistributions();
+   }
+
+   /**
+    * Checks the sizes of the components against the remembered sizes and
+    * updates the changed ones. All components are checked if the sizes are
+    * dirty, otherwise only the ones that were added. If the number of
+    * components does not match, all sizes are queried again.
+    *
+    * @return true if a size changed
+    */
+   private boolean update(Sizes sizes, Container self, int ncomponents,
+         boolean minimum)
+   {
+      boolean changed = false;
+      if (sizes.count != ncomponents)
+      {
+         sizes.clear(ncomponents);
+         changed = true;
+      }
+      boolean all = changed || sizes.dirty;
+      for (int i = 0; i < ncomponents; i++)
+      {
+         if (!all && !sizes.pending[i])
+            continue;
+         sizes.pending[i] = false;
+         queries++;
+         Component comp = self.getComponent(i);
+         Dimension d = minimum ? minimumSize(comp) : maximumSize(comp);
+         if (d != null)
+            changed |= sizes.update(i, true, main(d.width, d.height),
+                  cross(d.width, d.height));
+         else
+            changed |= sizes.update(i, false, 0, 0);
+      }
+      sizes.pendingCount = 0;
+      sizes.dirty = false;
+      return changed;
+   }
+
+   /**
+    * Discards the remembered distributions and breakpoints.
+    */
+   private void discardDistributions()
+   {
+      parkedValid = false;
+      if (distributions != null)
+      {
+         for (Distribution d : distributions)
+            d.count = 0;
+      }
+      if (breakpoints != null)
+         breakpoints.count = -1;
+   }
+
+   /**
+    * Tells whether component i has a minimum size, see
+    * cacheMinimumSizes(Container, int).
+    */
+   boolean hasMinimumSize(int i)
+   {
+      return minimum.set[i];
+   }
+
+   /**
+    * Returns the remembered minimum width of component i.
+    */
+   int getMinimumWidth(int i)
+   {
+      return vertical ? minimum.cross[i] : minimum.main[i];
+   }
+
+   /**
+    * Returns the remembered minimum height of component i.
+    */
+   int getMinimumHeight(int i)
+   {
+      return vertical ? minimum.main[i] : minimum.cross[i];
+   }
+
+   /**
+    * Tells whether component i has a maximum size, see
+    * cacheMaximumSizes(Container, int).
+    */
+   boolean hasMaximumSize(int i)
+   {
+      return maximum.set[i];
+   }
+
+   /**
+    * Returns the remembered maximum width of component i.
+    */
+   int getMaximumWidth(int i)
+   {
+      return vertical ? maximum.cross[i] : maximum.main[i];
+   }
+
+   /**
+    * Returns the remembered maximum height of component i.
+    */
+   int getMaximumHeight(int i)
+   {
+      return vertical ? maximum.main[i] : maximum.cross[i];
+   }
+
+   /**
+    * Returns the remembered minimum or maximum sizes of the components, for
+    * TOnionSnapshot.
+    *
+    * @param minimum
+    *           true for the minimum sizes, false for the maximum sizes
+    * @return the sizes, null if they were never asked for
+    */
+   Sizes getSizes(boolean minimum)
+   {
+      return minimum ? this.minimum : this.maximum;
+   }
+
+   /**
+    * Restores the remembered minimum or maximum sizes of the components from
+    * a TOnionSnapshot. They are used as if they had just been queried.
+    *
+    * @param minimum
+    *           true for the minimum sizes, false for the maximum sizes
+    * @param ncomponents
+    *           the number of components
+    * @param set
+    *           false for each component without size
+    * @param main
+    *           the size of each component along the main axis
+    * @param cross
+    *           the size of each component along the cross axis
+    */
+   void restoreSizes(boolean minimum, int ncomponents, boolean[] set,
+         int[] main, int[] cross)
+   {
+      Sizes sizes = minimum ? this.minimum : this.maximum;
+      if (sizes == null)
+      {
+         sizes = new Sizes();
+         if (minimum)
+            this.minimum = sizes;
+         else
+            this.maximum = sizes;
+      }
+      sizes.clear(ncomponents);
+      sizes.dirty = false;
+      for (int i = 0; i < ncomponents; i++)
+      {
+         if (set[i])
+            sizes.update(i, true, main[i], cross[i]);
+      }
+      windowed = false;
+      discardDistributions();
+   }
+
+   /**
+    * Passes the invalidation of a layer on to the next TOnionLayer above.
+    * <p>
+    * Containers in between with other layouts, e.g. a JPanel with a
+    * BorderLayout wrapped around a layer, derive their sizes from the layer
+    * without remembering them, so the layer above them is invalidated as well.
+    * The search stops at a validate root like a JScrollPane, whose size does
+    * not depend on its content.
+    *
+    * @param self
+    *           the container whose layout was invalidated
+    */
+   static void invalidateParent(Container self)
+   {
+      for (Container c = self.getParent(); c != null; c = c.getParent())
+      {
+         if (c.getLayout() instanceof TOnionLayer)
+         {
+            ((TOnionLayer) c.getLayout()).invalidateLayout(c);
+            return;
+         }
+         if (c.isValidateRoot())
+            return;
+      }
+   }
+
+   /**
+    * Tells the listener that an operation begins and starts measuring it.
+    *
+    * @param listener
+    *           the listener of TOnionInstrumentation
+    * @param operation
+    *           the operation
+    * @param self
+    *           the container the layout is assigned to
+    * @return the measurement to be passed to finishMeasurement
+    */
+   TOnionMeasurement startMeasurement(TOnionListener listener,
+         TOnionListener.Operation operation, Container self)
+   {
+      listener.started(operation, self);
+      TOnionMeasurement m = new TOnionMeasurement();
+      m.queries = queries;
+      m.boundsSet = boundsSet;
+      m.allocatedBytes = TOnionInstrumentation.allocatedBytes();
+      m.nanos = System.nanoTime();
+      return m;
+   }
+
+   /**
+    * Finishes measuring an operation and tells the listener.
+    *
+    * @param listener
+    *           the listener passed to startMeasurement
+    * @param operation
+    *           the operation
+    * @param self
+    *           the container the layout is assigned to
+    * @param m
+    *           the measurement returned by startMeasurement
+    * @param cached
+    *           true if a size query was answered from the remembered size
+    */
+   void finishMeasurement(TOnionListener listener,
+         TOnionListener.Operation operation, Container self,
+         TOnionMeasurement m, boolean cached)
+   {
+      m.nanos = System.nanoTime() - m.nanos;
+      if (m.allocatedBytes >= 0)
+         m.allocatedBytes = TOnionInstrumentation.allocatedBytes()
+               - m.allocatedBytes;
+      m.queries = queries - m.queries;
+      m.boundsSet = boundsSet - m.boundsSet;
+      m.ncomponents = self.getComponentCount();
+      m.cached = cached;
+      listener.finished(operation, self, m);
+   }
+
+   /**
+    * Determines the minimum size of a component.
+    * <p>
+    * In case the component is a Container with a TOnionLayer as Layout the
+    * dimensions derived by content - if any - override given Dimensions. Only
+    * when there is no content the given Dimensions are used.
+    *
+    * @param comp
+    *           the component
+    * @return the minimum size, may be null
+    */
+   static Dimension minimumSize(Component comp)
+   {
+      if (comp instanceof Container)
+      {
+         LayoutManager layout = ((Container) comp).getLayout();
+         if (layout instanceof TOnionLayer)
+         {
+            Dimension dminContent = ((TOnionLayer) layout)
+                  .minimumLayoutSize((Container) comp);
+            if (dminContent != null)
+               return dminContent;
+         }
+      }
+      return comp.getMinimumSize();
+   }
+
+   /**
+    * Determines the maximum size of a component.
+    * <p>
+    * In case the component is a Container with a TOnionLayer as Layout the
+    * dimensions derived by content - if any - override given Dimensions. Only
+    * when there is no content the given Dimensions are used.
+    *
+    * @param comp
+    *           the component
+    * @return the maximum size, may be null
+    */
+   static Dimension maximumSize(Component comp)
+   {
+      if (comp instanceof Container)
+      {
+         LayoutManager layout = ((Container) comp).getLayout();
+         if (layout instanceof TOnionLayer)
+         {
+            Dimension dmaxContent = ((TOnionLayer) layout)
+                  .maximumLayoutSize((Container) comp);
+            if (dmaxContent != null)
+               return dmaxContent;
+         }
+      }
+      return comp.getMaximumSize();
+   }
+
+   /**
+    * Determines the insets of the container.
+    * <p>
+    * <code>JComponent.getInsets()</code> returns a new <code>Insets</code>
+    * object on every call. Unless the container overrides
+    * <code>getInsets()</code>, the engine lets it fill in one reusable object,
+    * so a layout pass does not allocate.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @return the insets, which must not be kept
+    */
+   Insets getInsets(Container self)
+   {
+      if (insetsReusable == 0)
+      {
+         insetsReusable = -1;
+         try
+         {
+            if (self instanceof JComponent
+                  && self.getClass().getMethod("getInsets")
+                        .getDeclaringClass() == JComponent.class)
+            {
+               insetsReusable = 1;
+               insets = new Insets(0, 0, 0, 0);
+            }
+         }
+         catch (NoSuchMethodException | SecurityException e)
+         {
+            // use getInsets()
+         }
+      }
+      if (insetsReusable > 0)
+         return ((JComponent) self).getInsets(insets);
+      return self.getInsets();
+   }
+
+   /**
+    * Sets the bounds of a component, unless the component already has them.
+    * <p>
+    * Most of the time only a few components change their bounds in a layout
+    * pass, e.g. a resize in width leaves all heights alone. Comparing the
+    * bounds first keeps all others out of <code>Component.reshape</code> and
+    * out of subclasses that override <code>setBounds</code> or
+    * <code>reshape</code> and do work even if nothing changed.
+    */
+   void setBounds(Component comp, int x, int y, int width, int height)
+   {
+      if (comp.getX() != x || comp.getY() != y || comp.getWidth() != width
+            || comp.getHeight() != height)
+      {
+         comp.setBounds(x, y, width, height);
+         boundsSet++;
+      }
+   }
+
+   private int main(int width, int height)
+   {
+      return vertical ? height : width;
+   }
+
+   private int cross(int width, int height)
+   {
+      return vertical ? width : height;
+   }
+
+   private int mainInsets(Insets insets)
+   {
+      return vertical ? insets.top + insets.bottom : insets.left + insets.right;
+   }
+
+   private int crossInsets(Insets insets)
+   {
+      return vertical ? insets.left + insets.right : insets.top + insets.bottom;
+   }
+
+   private Dimension dimension(int main, int cross)
+   {
+      return vertical ? new Dimension(cross, main) : new Dimension(main, cross);
+   }
+
+   /**
+    * The result of distributing the available space among the components.
+    */
+   static final class Distribution
+   {
+      /**
+       * the number of components, 0 if the distribution is not valid
+       */
+      int count;
+
+      /**
+       * the available size along the main axis the distribution was done for
+       */
+      int availableMain;
+
+      /**
+       * the available size along the cross axis the distribution was done for
+       */
+      int availableCross;
+
+      /**
+       * the size of all components along the cross axis
+       */
+      int cross;
+
+      /**
+       * the largest minimum size of all components along the cross axis
+       */
+      int minCross;
+
+      /**
+       * the smallest maximum size of all components along the cross axis,
+       * corrected to minCross if it was less
+       */
+      int maxCross;
+
+      /**
+       * the size of each component along the main axis
+       */
+      int[] sizes;
+
+      /**
+       * the position of each component along the main axis and the end of
+       * the last one, for the start and gap they were computed for, valid
+       * unless offsetsCount differs from count
+       */
+      private int[] offsets;
+      private int offsetsCount;
+      private int offsetsStart;
+      private int offsetsGap;
+
+      /**
+       * Returns the position of each component along the main axis and the
+       * end of the last one, computed once for each distribution.
+       *
+       * @param start
+       *           the position of the first component
+       * @param gap
+       *           the gap between components
+       * @return the positions, which must not be modified
+       */
+      int[] offsets(int start, int gap)
+      {
+         if (offsetsCount == count && offsetsStart == start
+               && offsetsGap == gap)
+            return offsets;
+         if (offsets == null || offsets.length < count + 1)
+            offsets = new int[count + 1];
+         int position = start;
+         for (int i = 0; i < count; i++)
+         {
+            offsets[i] = position;
+            position += sizes[i] + gap;
+         }
+         offsets[count] = position - gap;
+         offsetsCount = count;
+         offsetsStart = start;
+         offsetsGap = gap;
+         return offsets;
+      }
+   }
+
+   /**
+    * The minimum or maximum sizes of components along the main and the cross
+    * axis. A component without size is marked in set.
+    * <p>
+    * The engine changes the sizes with update only, which keeps the sum along
+    * the main axis and the largest and smallest size along the cross axis up
+    * to date. The solver fills in the arrays directly and uses the methods
+    * that take the number of components.
+    */
+   static final class Sizes
+   {
+      /**
+       * the number of components the sizes are valid for, used by the engine
+       * to tell whether the remembered sizes are valid
+       */
+      int count;
+
+      /**
+       * true if the sizes must be checked against the components before use
+       */
+      boolean dirty;
+
+      /**
+       * true for each component that was added and not queried yet, and how
+       * many there are
+       */
+      boolean[] pending;
+      int pendingCount;
+
+      /**
+       * the sum of the set sizes along the main axis and the number of
+       * components without size
+       */
+      private int total;
+      private int unset;
+
+      /**
+       * the largest set size along the cross axis (at least 0) and how many
+       * components have it, 0 if the largest must be searched again
+       */
+      private int largest;
+      private int largestCount;
+
+      /**
+       * the smallest set size along the cross axis (at most
+       * Integer.MAX_VALUE) and how many components have it, 0 if the smallest
+       * must be searched again
+       */
+      private int smallest;
+      private int smallestCount;
+
+      /**
+       * the size of each component along the main axis
+       */
+      int[] main;
+
+      /**
+       * the size of each component along the cross axis
+       */
+      int[] cross;
+
+      /**
+       * false for each component without size
+       */
+      boolean[] set;
+
+      /**
+       * Makes room for at least ncomponents components, keeping the sizes.
+       */
+      void ensureCapacity(int ncomponents)
+      {
+         if (set == null)
+         {
+            main = new int[ncomponents];
+            cross = new int[ncomponents];
+            set = new boolean[ncomponents];
+            pending = new boolean[ncomponents];
+         }
+         else if (set.length < ncomponents)
+         {
+            // grow by half at least, forms are built one component at a time
+            int capacity = Math.max(ncomponents, set.length + set.length / 2);
+            main = Arrays.copyOf(main, capacity);
+            cross = Arrays.copyOf(cross, capacity);
+            set = Arrays.copyOf(set, capacity);
+            pending = Arrays.copyOf(pending, capacity);
+         }
+      }
+
+      /**
+       * Makes room for ncomponents components without size.
+       */
+      void clear(int ncomponents)
+      {
+         ensureCapacity(ncomponents);
+         Arrays.fill(set, 0, ncomponents, false);
+         Arrays.fill(pending, 0, ncomponents, false);
+         pendingCount = 0;
+         count = ncomponents;
+         total = 0;
+         unset = ncomponents;
+         largest = 0;
+         largestCount = 0;
+         smallest = Integer.MAX_VALUE;
+         smallestCount = 0;
+      }
+
+      /**
+       * Inserts a component without size at index i, which is marked pending.
+       */
+      void insert(int i)
+      {
+         ensureCapacity(count + 1);
+         System.arraycopy(main, i, main, i + 1, count - i);
+         System.arraycopy(cross, i, cross, i + 1, count - i);
+         System.arraycopy(set, i, set, i + 1, count - i);
+         System.arraycopy(pending, i, pending, i + 1, count - i);
+         set[i] = false;
+         pending[i] = true;
+         pendingCount++;
+         unset++;
+         count++;
+      }
+
+      /**
+       * Marks component i to be checked when the sizes are used next.
+       */
+      void markPending(int i)
+      {
+         if (i < count && !pending[i])
+         {
+            pending[i] = true;
+            pendingCount++;
+         }
+      }
+
+      /**
+       * Removes the component at index i.
+       */
+      void remove(int i)
+      {
+         update(i, false, 0, 0);
+         if (pending[i])
+            pendingCount--;
+         unset--;
+         count--;
+         System.arraycopy(main, i + 1, main, i, count - i);
+         System.arraycopy(cross, i + 1, cross, i, count - i);
+         System.arraycopy(set, i + 1, set, i, count - i);
+         System.arraycopy(pending, i + 1, pending, i, count - i);
+      }
+
+      /**
+       * Changes the size of component i.
+       *
+       * @return true if the size changed
+       */
+      boolean update(int i, boolean isSet, int mainSize, int crossSize)
+      {
+         if (set[i] == isSet
+               && (!isSet || main[i] == mainSize && cross[i] == crossSize))
+            return false;
+         if (set[i])
+         {
+            total -= main[i];
+            if (cross[i] == largest)
+               largestCount--;
+            if (cross[i] == smallest)
+               smallestCount--;
+         }
+         else
+         {
+            unset--;
+         }
+         set[i] = isSet;
+         main[i] = mainSize;
+         cross[i] = crossSize;
+         if (isSet)
+         {
+            total += mainSize;
+            if (crossSize > largest)
+            {
+               largest = crossSize;
+               largestCount = 1;
+            }
+            else if (crossSize == largest)
+               largestCount++;
+            if (crossSize < smallest)
+            {
+               smallest = crossSize;
+               smallestCount = 1;
+            }
+            else if (crossSize == smallest)
+               smallestCount++;
+         }
+         else
+         {
+            unset++;
+         }
+         return true;
+      }
+
+      /**
+       * Returns the sum of the sizes along the main axis, a component without
+       * size adds the fallback.
+       */
+      int getTotal(int fallback)
+      {
+         return total + unset * fallback;
+      }
+
+      /**
+       * Returns the largest size along the cross axis, 0 if no component has a
+       * size.
+       */
+      int getLargestCross()
+      {
+         if (largestCount == 0 && largest > 0)
+         {
+            largest = largestCross(count);
+            for (int i = 0; i < count; i++)
+            {
+               if (set[i] && cross[i] == largest)
+                  largestCount++;
+            }
+         }
+         return largest;
+      }
+
+      /**
+       * Returns the smallest size along the cross axis, Integer.MAX_VALUE if no
+       * component has a size.
+       */
+      int getSmallestCross()
+      {
+         if (smallestCount == 0 && smallest < Integer.MAX_VALUE)
+         {
+            smallest = smallestCross(count);
+            for (int i = 0; i < count; i++)
+            {
+               if (set[i] && cross[i] == smallest)
+                  smallestCount++;
+            }
+         }
+         return smallest;
+      }
+
+      /**
+       * Returns the sum of the sizes along the main axis, a component without
+       * size adds the fallback.
+       */
+      int total(int ncomponents, int fallback)
+      {
+         int total = 0;
+         for (int i = 0; i < ncomponents; i++)
+         {
+            total += set[i] ? main[i] : fallback;
+         }
+         return total;
+      }
+
+      /**
+       * Returns the largest size along the cross axis, 0 if no component has a
+       * size.
+       */
+      int largestCross(int ncomponents)
+      {
+         int largest = 0;
+         for (int i = 0; i < ncomponents; i++)
+         {
+            if (set[i] && largest < cross[i])
+               largest = cross[i];
+         }
+         return largest;
+      }
+
+      /**
+       * Returns the smallest size along the cross axis, Integer.MAX_VALUE if no
+       * component has a size.
+       */
+      int smallestCross(int ncomponents)
+      {
+         int smallest = Integer.MAX_VALUE;
+         for (int i = 0; i < ncomponents; i++)
+         {
+            if (set[i] && smallest > cross[i])
+               smallest = cross[i];
+         }
+         return smallest;
+      }
+   }
+
+   /**
+    * The breakpoints of DistributionMode.WATER_FILLING for given minimum and
+    * maximum sizes.
+    * <p>
+    * Water-filling is piecewise linear in the available size: between two
+    * breakpoints, where the next component reaches its maximum size, the same
+    * components are at their maximum size and the others share the rest. The
+    * components are sorted by the level of their maximum size once, together
+    * with the sum of the maximum sizes of the components before and the sum
+    * of the weights of the components after each one. A distribution then
+    * finds its segment by a binary search and computes all sizes in one pass,
+    * without sorting and without correcting sizes that exceed their maximum.
+    * The result is the same as distributeWaterFilling's.
+    * <p>
+    * The breakpoints only hold while the sizes do not change and do not
+    * depend on the available size, i.e. as long as every component has a
+    * minimum and maximum size.
+    */
+   static final class Breakpoints
+   {
+      /**
+       * the number of components the breakpoints were computed for, -1 if
+       * they must be computed again
+       */
+      int count = -1;
+
+      /**
+       * the sums of the minimum and maximum sizes, and the sum at level 1
+       */
+      private long mintotal;
+      private long maxtotal;
+      private long levelOne;
+
+      /**
+       * the number of components below their maximum size at level 1, and
+       * these components sorted by the level of their maximum size
+       */
+      private int active;
+      private int[] order;
+
+      /**
+       * the position of each component in order, -1 for the components at
+       * their maximum size at level 1
+       */
+      private int[] rank;
+
+      /**
+       * fixed[k] is the sum of the maximum sizes of all components at their
+       * maximum size, and weights[k] the sum of the weights of the others,
+       * when the first k components in order are at their maximum size
+       */
+      private long[] fixed;
+      private long[] weights;
+
+      /**
+       * Distributes the available size like distributeWaterFilling, the
+       * breakpoints are computed first if necessary.
+       *
+       * @param min
+       *           the minimum size of each component
+       * @param max
+       *           the maximum size of each component, corrected in place
+       * @param ncomponents
+       *           the number of components
+       * @param available
+       *           the available size
+       * @param sizes
+       *           receives the size of each component
+       */
+      void distribute(int[] min, int[] max, int ncomponents, int available,
+            int[] sizes)
+      {
+         for (int i = 0; i < ncomponents; i++)
+         {
+            if (max[i] < min[i])
+            {
+               // error correction
+               max[i] = min[i];
+            }
+         }
+         if (count != ncomponents)
+            compute(min, max, ncomponents);
+         if (available <= mintotal)
+         {
+            System.arraycopy(min, 0, sizes, 0, ncomponents);
+            return;
+         }
+         if (available >= maxtotal)
+         {
+            System.arraycopy(max, 0, sizes, 0, ncomponents);
+            return;
+         }
+         if (available <= levelOne)
+         {
+            System.arraycopy(min, 0, sizes, 0, ncomponents);
+            fillBelowLevelOne(min, max, ncomponents, available - mintotal,
+                  sizes);
+            return;
+         }
+
+         // the number of components at their maximum size is the first k
+         // for which the level does not exceed the level of component k
+         int low = 0;
+         int high = active;
+         while (low < high)
+         {
+            int mid = (low + high) >>> 1;
+            int i = order[mid];
+            if (compare(available - fixed[mid], weight(min, i), max[i],
+                  weights[mid]) > 0)
+               low = mid + 1;
+            else
+               high = mid;
+         }
+         long rest = available - fixed[low];
+         long running = 0;
+         long share = 0;
+         for (int i = 0; i < ncomponents; i++)
+         {
+            if (rank[i] < low)
+            {
+               sizes[i] = max[i];
+            }
+            else
+            {
+               running += weight(min, i);
+               long next = scale(running, rest, weights[low]);
+               sizes[i] = (int) (next - share);
+               share = next;
+            }
+         }
+      }
+
+      /**
+       * Computes the breakpoints for corrected minimum and maximum sizes.
+       */
+      private void compute(int[] min, int[] max, int ncomponents)
+      {
+         if (order == null || order.length < ncomponents)
+         {
+            order = new int[ncomponents];
+            rank = new int[ncomponents];
+            fixed = new long[ncomponents + 1];
+            weights = new long[ncomponents + 1];
+         }
+         mintotal = 0;
+         maxtotal = 0;
+         levelOne = 0;
+         active = 0;
+         long fixedAtOne = 0;
+         long weightsAtOne = 0;
+         for (int i = 0; i < ncomponents; i++)
+         {
+            mintotal += min[i];
+            maxtotal += max[i];
+            levelOne += Math.min(weight(min, i), max[i]);
+            if (max[i] <= weight(min, i))
+            {
+               rank[i] = -1;
+               fixedAtOne += max[i];
+            }
+            else
+            {
+               order[active++] = i;
+               weightsAtOne += weight(min, i);
+            }
+         }
+         sortByMaximumLevel(order, active, min, max);
+         fixed[0] = fixedAtOne;
+         weights[0] = weightsAtOne;
+         for (int k = 0; k < active; k++)
+         {
+            int i = order[k];
+            rank[i] = k;
+            fixed[k + 1] = fixed[k] + max[i];
+            weights[k + 1] = weights[k] - weight(min, i);
+         }
+         count = ncomponents;
+      }
+   }
+
+   /**
+    * Scratch buffers for the distribution of the available space. They grow
+    * with the number of components and are reused, so a layout pass does not
+    * allocate.
+    */
+   static final class Scratch
+   {
+      int[] min;
+      int[] max;
+      int[] difference;
+      int[] order;
+
+      /**
+       * Makes room for at least ncomponents components.
+       */
+      void ensureCapacity(int ncomponents)
+      {
+         if (min == null || min.length < ncomponents)
+         {
+            min = new int[ncomponents];
+            max = new int[ncomponents];
+            difference = new int[ncomponents];
+            order = null;
+         }
+      }
+
+      /**
+       * Returns the buffer for the order of the components, which is only
+       * needed by DistributionMode.WATER_FILLING.
+       */
+      int[] order()
+      {
+         if (order == null)
+            order = new int[min.length];
+         return order;
+      }
+   }
+}
@@ -0,0 +1,300 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.EventQueue;
+import java.awt.Window;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * <code>TOnionClipping</code> lets the TOnion layouts inside a JViewport put
+ * off laying out what can not be seen.
+ * <p>
+ * Once clipping is installed on a viewport, a <code>TotemLayout</code>,
+ * <code>TrainLayout</code> or <code>BullsEyeLayout</code> anywhere below its
+ * view checks its container before it lays it out. If the bounds the layer
+ * above assigned to the container lie completely outside the visible part of
+ * the view, the layout of the container and everything inside it is
+ * deferred. When the viewport is scrolled or resized, or the view has been
+ * laid out again, the deferred containers that came into view are laid out.
+ *
+ * <pre>
+ * JScrollPane scrollPane = new JScrollPane(form);
+ * TOnionClipping.install(scrollPane.getViewport());
+ * </pre>
+ * <p>
+ * Resizing a tall form then only lays out the part that can be seen. The
+ * minimum and maximum sizes are not affected, they are always determined for
+ * the whole form.
+ *
+ * @author Birke Heeren
+ * @since private
+ * @see TotemLayout#setVirtualized(boolean)
+ */
+public final class TOnionClipping
+{
+   /**
+    * The deferred containers of a viewport are kept as a client property of
+    * the viewport under this key.
+    */
+   private static final Object KEY = TOnionClipping.class;
+
+   /**
+    * The number of viewports clipping is installed on. It is changed under
+    * the tree lock, but read by defer(Container) without it, e.g. from a
+    * layout called directly. Without any, the layouts do not look for a
+    * viewport at all.
+    */
+   private static volatile int installed;
+
+   private TOnionClipping()
+   {
+   }
+
+   /**
+    * Installs clipping on a viewport. The TOnion layouts below its view defer
+    * the layout of containers that can not be seen.
+    *
+    * @param viewport
+    *           the viewport, e.g. of a JScrollPane
+    * @exception IllegalArgumentException
+    *               if the viewport is null
+    */
+   public static void install(JViewport viewport)
+   {
+      if (viewport == null)
+         throw new IllegalArgumentException("viewport can not be null");
+      synchronized (viewport.getTreeLock())
+      {
+         if (viewport.getClientProperty(KEY) != null)
+            return;
+         Deferred deferred = new Deferred(viewport);
+         viewport.putClientProperty(KEY, deferred);
+         viewport.addChangeListener(deferred);
+         installed++;
+      }
+   }
+
+   /**
+    * Removes clipping from a viewport. The containers whose layout was
+    * deferred are laid out now.
+    *
+    * @param viewport
+    *           the viewport
+    */
+   public static void uninstall(JViewport viewport)
+   {
+      synchronized (viewport.getTreeLock())
+      {
+         Deferred deferred = (Deferred) viewport.getClientProperty(KEY);
+         if (deferred == null)
+            return;
+         viewport.removeChangeListener(deferred);
+         viewport.putClientProperty(KEY, null);
+         installed--;
+         deferred.layOut(true);
+      }
+   }
+
+   /**
+    * Tells whether clipping is installed on a viewport.
+    *
+    * @param viewport
+    *           the viewport
+    * @return true if clipping is installed
+    */
+   public static boolean isInstalled(JViewport viewport)
+   {
+      return viewport.getClientProperty(KEY) != null;
+   }
+
+   /**
+    * Checks a container before its TOnion layout lays it out. If clipping is
+    * installed on the viewport the container is in, and the container can
+    * not be seen, its layout is deferred. As long as clipping is not
+    * installed on any viewport, nothing is checked.
+    *
+    * @param self
+    *           the container to be laid out
+    * @return true if the layout is deferred and must not be done now
+    */
+   static boolean defer(Container self)
+   {
+      if (installed == 0)
+         return false;
+      Deferred deferred = deferredOf(self);
+      if (deferred == null)
+         return false;
+      if (deferred.isVisible(self))
+      {
+         deferred.remove(self);
+         // the view is being laid out, deferred containers may have moved
+         deferred.scheduleCheck();
+         return false;
+      }
+      deferred.add(self);
+      return true;
+   }
+
+   /**
+    * Finds the deferred containers of the viewport a container is in.
+    *
+    * @return the deferred containers, null if the container is not below the
+    *         view of a viewport with clipping installed
+    */
+   private static Deferred deferredOf(Component self)
+   {
+      Container parent = self.getParent();
+      if (parent == null || parent instanceof JViewport)
+         return null; // the view itself is always laid out
+      while (parent != null && !(parent instanceof JViewport))
+         parent = parent.getParent();
+      if (parent == null)
+         return null;
+      return (Deferred) ((JViewport) parent).getClientProperty(KEY);
+   }
+
+   /**
+    * The containers of one viewport whose layout was deferred, in the order
+    * they were deferred, which lays out outer containers before inner ones.
+    */
+   private static final class Deferred implements ChangeListener, Runnable
+   {
+      private final JViewport viewport;
+      private final Set<Container> containers = new LinkedHashSet<Container>();
+      private boolean checkScheduled;
+
+      Deferred(JViewport viewport)
+      {
+         this.viewport = viewport;
+      }
+
+      void add(Container self)
+      {
+         containers.add(self);
+      }
+
+      void remove(Container self)
+      {
+         if (!containers.isEmpty())
+            containers.remove(self);
+      }
+
+      /**
+       * Tells whether a container intersects the visible part of the view. A
+       * container that is no longer below the view is not clipped and counts
+       * as visible.
+       */
+      boolean isVisible(Container self)
+      {
+         int x = 0;
+         int y = 0;
+         Component c = self;
+         while (c.getParent() != viewport)
+         {
+            x += c.getX();
+            y += c.getY();
+            c = c.getParent();
+            if (c == null)
+               return true;
+         }
+         // the view is moved to the negative view position
+         int left = -c.getX();
+         int top = -c.getY();
+         return x < left + viewport.getWidth() && x + self.getWidth() > left
+               && y < top + viewport.getHeight()
+               && y + self.getHeight() > top;
+      }
+
+      /**
+       * Checks the deferred containers after the current event, when the
+       * view has been laid out.
+       */
+      void scheduleCheck()
+      {
+         if (checkScheduled || containers.isEmpty())
+            return;
+         checkScheduled = true;
+         EventQueue.invokeLater(this);
+      }
+
+      @Override
+      public void run()
+      {
+         synchronized (viewport.getTreeLock())
+         {
+            checkScheduled = false;
+            layOut(false);
+         }
+      }
+
+      @Override
+      public void stateChanged(ChangeEvent e)
+      {
+         synchronized (viewport.getTreeLock())
+         {
+            layOut(false);
+         }
+      }
+
+      /**
+       * Lays out the deferred containers that can be seen now, or all of
+       * them. Containers that are no longer in the view are forgotten.
+       */
+      void layOut(boolean all)
+      {
+         if (containers.isEmpty())
+            return;
+         for (Container self : containers.toArray(new Container[0]))
+         {
+            if (!containers.contains(self))
+               continue;
+            if (!(self.getLayout() instanceof TOnionLayer)
+                  || !SwingUtilities.isDescendingFrom(self, viewport))
+            {
+               containers.remove(self);
+               continue;
+            }
+            if (!all && !isVisible(self))
+               continue;
+            containers.remove(self);
+            layOutTree(self);
+            // clears the invalidations of the components resized on the way
+            self.validate();
+         }
+      }
+
+      /**
+       * Lays out a container that was deferred and everything inside it,
+       * parents before children. The container and its content were marked
+       * valid when it was validated, so validate() alone would only lay out
+       * what was invalidated since, which depends on the peers. The content
+       * of containers deferred again is left to them.
+       */
+      private void layOutTree(Container parent)
+      {
+         parent.doLayout();
+         if (containers.contains(parent))
+            return;
+         for (int i = 0; i < parent.getComponentCount(); i++)
+         {
+            Component comp = parent.getComponent(i);
+            if (comp instanceof Container && !(comp instanceof Window))
+               layOutTree((Container) comp);
+         }
+      }
+   }
+}
@@ -0,0 +1,92 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * <code>TOnionInstrumentation</code> holds the <code>TOnionListener</code>
+ * that all TOnion layouts report to.
+ * <p>
+ * Instrumentation is off by default. Without a listener a layout only checks
+ * for one and does nothing else, no time is taken and nothing is allocated.
+ * With a listener each operation takes the time and, if the JVM supports it,
+ * the bytes allocated by the current thread.
+ * <p>
+ * This replaces the test mode of the layouts, which printed each layout pass
+ * to <code>System.out</code>.
+ *
+ * @author Birke Heeren
+ * @since private
+ * @see TOnionListener
+ */
+public final class TOnionInstrumentation
+{
+   private static volatile TOnionListener listener;
+
+   private TOnionInstrumentation()
+   {
+   }
+
+   /**
+    * Installs the listener all TOnion layouts report to, replacing the one
+    * installed before.
+    *
+    * @param listener
+    *           the listener, null turns instrumentation off
+    */
+   public static void setListener(TOnionListener listener)
+   {
+      TOnionInstrumentation.listener = listener;
+   }
+
+   /**
+    * Gets the listener all TOnion layouts report to.
+    *
+    * @return the listener, null if instrumentation is off
+    */
+   public static TOnionListener getListener()
+   {
+      return listener;
+   }
+
+   /**
+    * Determines the number of bytes the current thread has allocated so far.
+    *
+    * @return the allocated bytes, -1 if the JVM does not measure them
+    */
+   static long allocatedBytes()
+   {
+      com.sun.management.ThreadMXBean threads = Allocations.THREADS;
+      if (threads == null)
+         return -1;
+      return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+   }
+
+   /**
+    * The management bean is looked up the first time it is needed.
+    */
+   private static final class Allocations
+   {
+      static final com.sun.management.ThreadMXBean THREADS = lookup();
+
+      private static com.sun.management.ThreadMXBean lookup()
+      {
+         ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+         if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return null;
+         com.sun.management.ThreadMXBean sunThreads =
+               (com.sun.management.ThreadMXBean) threads;
+         if (!sunThreads.isThreadAllocatedMemorySupported()
+               || !sunThreads.isThreadAllocatedMemoryEnabled())
+            return null;
+         return sunThreads;
+      }
+   }
+}
@@ -0,0 +1,97 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.LayoutManager2;
+
+/**
+ * A <code>TOnionLayer</code> is a layout manager that takes part in
+ * TOnionLayout like <code>TotemLayout</code>, <code>TrainLayout</code> and
+ * <code>BullsEyeLayout</code> do.
+ * <p>
+ * A layer inquires about the minimum and maximum sizes of all its components.
+ * If a component is a container whose layout is a <code>TOnionLayer</code>,
+ * the sizes derived from its content override the sizes set on the container.
+ * Only when there is no content the sizes set on the container are used. Any
+ * other component is asked for <code>getMinimumSize()</code> and
+ * <code>getMaximumSize()</code>.
+ * <p>
+ * A layer is asked for its content sizes often, once by each layout pass of
+ * every layer above it. It is expected to remember them until
+ * <code>invalidateLayout</code> is called, and to pass the invalidation on
+ * to the TOnion layers above it.
+ * <p>
+ * Every layer passes the invalidation on to the next <code>TOnionLayer</code>
+ * above, whatever kind of layer it is, also across containers with other
+ * layouts in between. It stops at a validate root. Since a layer above
+ * remembers nothing it has not asked for, a layer that has passed the
+ * invalidation on need not do it again until its content sizes are asked for
+ * again.
+ * <p>
+ * An invalidated layer is not told which of its components changed, Swing
+ * only passes the container on. It keeps the sizes it remembers for its
+ * components, but checks each of them once before they are used next: a
+ * TOnion layer below answers from its own remembered content size, any other
+ * component is asked for its size. Only the sizes that really changed are
+ * updated. A change of a single field therefore costs one check per
+ * component of each layer above it, not only one per layer. The checks can
+ * not be limited to the invalid components, since
+ * <code>Component.setMinimumSize</code> and
+ * <code>setMaximumSize</code> do not invalidate the component, and a
+ * <code>revalidate()</code> of the container alone must pick the change up.
+ * <p>
+ * Swing also invalidates a displayed container whenever its size changes.
+ * Such an invalidation is no change of the content: the layer keeps its
+ * sizes and does not pass it on. Only the components that became invalid
+ * while the container was resized are checked, since Swing does not pass
+ * their invalidation on to an invalid container. Dragging a window then
+ * asks no component for its size.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+public interface TOnionLayer extends LayoutManager2
+{
+   /**
+    * Determines the minimum size derived from the content of the container.
+    * <p>
+    * The result is remembered until the layout is invalidated and must not be
+    * modified by the caller.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @return the minimum size, null if the container has no content
+    */
+   @Override
+   Dimension minimumLayoutSize(Container self);
+
+   /**
+    * Determines the maximum size derived from the content of the container.
+    * <p>
+    * The result is remembered until the layout is invalidated and must not be
+    * modified by the caller.
+    *
+    * @param self
+    *           the container in which to do the layout
+    * @return the maximum size, null if the container has no content
+    */
+   @Override
+   Dimension maximumLayoutSize(Container self);
+
+   /**
+    * Invalidates the layout, the remembered content sizes are discarded. The
+    * invalidation is passed on to the next TOnion layer above.
+    *
+    * @param self
+    *           the container in which to do the layout
+    */
+   @Override
+   void invalidateLayout(Container self);
+}
@@ -0,0 +1,87 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.Container;
+
+/**
+ * A <code>TOnionListener</code> is told about the work of
+ * <code>TotemLayout</code>, <code>TrainLayout</code> and
+ * <code>BullsEyeLayout</code>: every layout pass, every size query and every
+ * invalidation. It is installed with
+ * <code>TOnionInstrumentation.setListener</code>, no listener is installed by
+ * default.
+ * <p>
+ * The listener is called while the layout holds the tree lock, usually on the
+ * event dispatch thread. It should only count and return, e.g. feed counters
+ * or a recording, and must not change any component.
+ * <p>
+ * Size queries nest: while a layer determines its size, it asks the layers
+ * below for theirs. Every <code>started</code> call is followed by the
+ * matching <code>finished</code> call, with the calls for the layers below in
+ * between.
+ *
+ * @author Birke Heeren
+ * @since private
+ * @see TOnionInstrumentation
+ */
+public interface TOnionListener
+{
+   /**
+    * The work a layout reports.
+    */
+   enum Operation
+   {
+      /**
+       * <code>layoutContainer</code>
+       */
+      LAYOUT,
+
+      /**
+       * <code>minimumLayoutSize</code>
+       */
+      MINIMUM_SIZE,
+
+      /**
+       * <code>maximumLayoutSize</code>
+       */
+      MAXIMUM_SIZE
+   }
+
+   /**
+    * Called when a layout begins an operation.
+    *
+    * @param operation
+    *           the operation
+    * @param self
+    *           the container the layout is assigned to
+    */
+   void started(Operation operation, Container self);
+
+   /**
+    * Called when a layout has finished an operation.
+    *
+    * @param operation
+    *           the operation
+    * @param self
+    *           the container the layout is assigned to
+    * @param measurement
+    *           what the operation took, only valid during the call
+    */
+   void finished(Operation operation, Container self,
+         TOnionMeasurement measurement);
+
+   /**
+    * Called when the remembered sizes of a layout are discarded, because the
+    * layout was invalidated or a component was added or removed.
+    *
+    * @param self
+    *           the container the layout is assigned to
+    */
+   void invalidated(Container self);
+}
@@ -0,0 +1,96 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+/**
+ * A <code>TOnionMeasurement</code> tells a <code>TOnionListener</code> what
+ * one layout operation took.
+ * <p>
+ * Time and allocated bytes include the layers below, which report their own
+ * operations in between. Size queries and <code>setBounds</code> calls only
+ * count the components of the container itself.
+ *
+ * @author Birke Heeren
+ * @since private
+ * @see TOnionListener
+ */
+public final class TOnionMeasurement
+{
+   int ncomponents;
+   boolean cached;
+   int queries;
+   int boundsSet;
+   long nanos;
+   long allocatedBytes;
+
+   TOnionMeasurement()
+   {
+   }
+
+   /**
+    * Gets the number of components of the container.
+    *
+    * @return the number of components
+    */
+   public int getComponentCount()
+   {
+      return ncomponents;
+   }
+
+   /**
+    * Tells whether a size query was answered from the remembered size.
+    *
+    * @return true if the size was remembered, always false for a layout pass
+    */
+   public boolean isCached()
+   {
+      return cached;
+   }
+
+   /**
+    * Gets the number of components that were asked for their minimum or
+    * maximum size.
+    *
+    * @return the number of size queries
+    */
+   public int getQueries()
+   {
+      return queries;
+   }
+
+   /**
+    * Gets the number of components whose bounds were changed. Components that
+    * already had their bounds are not counted.
+    *
+    * @return the number of <code>setBounds</code> calls
+    */
+   public int getBoundsSet()
+   {
+      return boundsSet;
+   }
+
+   /**
+    * Gets the time the operation took.
+    *
+    * @return the time in nanoseconds
+    */
+   public long getNanos()
+   {
+      return nanos;
+   }
+
+   /**
+    * Gets the number of bytes the operation allocated.
+    *
+    * @return the allocated bytes, -1 if the JVM does not measure them
+    */
+   public long getAllocatedBytes()
+   {
+      return allocatedBytes;
+   }
+}
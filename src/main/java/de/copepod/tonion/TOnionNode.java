@@ -0,0 +1,311 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.Dimension;
+import java.awt.Insets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A <code>TOnionNode</code> describes a component of a TOnionLayout for the
+ * <code>TOnionSolver</code>, without any AWT component.
+ * <p>
+ * A node is either a leaf with a minimum and maximum size, or a layer that
+ * lays out its children like <code>TotemLayout</code>,
+ * <code>TrainLayout</code> or <code>BullsEyeLayout</code>. Just like a
+ * container the minimum and maximum size of a layer are only used when the
+ * layer is empty, otherwise they are derived from its children.
+ * <p>
+ * A node must not be changed while it is being solved.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+public class TOnionNode
+{
+   /**
+    * The layers a node can lay out its children with.
+    */
+   public enum Layer
+   {
+      /**
+       * one column from top to bottom, like <code>TotemLayout</code>
+       */
+      TOTEM,
+
+      /**
+       * one row from left to right, like <code>TrainLayout</code>
+       */
+      TRAIN,
+
+      /**
+       * one centered child, like <code>BullsEyeLayout</code>
+       */
+      BULLS_EYE
+   }
+
+   /**
+    * This is the layer of the node, null for a leaf.
+    */
+   private final Layer layer;
+
+   /**
+    * This is the gap between children, vertical for TOTEM and horizontal for
+    * TRAIN.
+    */
+   private int gap;
+
+   /**
+    * This is the way the available space is distributed among the children.
+    */
+   private DistributionMode distributionMode = DistributionMode.PROPORTIONAL;
+
+   private Dimension minimumSize;
+   private Dimension maximumSize;
+   private Insets insets;
+   private final List<TOnionNode> children;
+
+   /**
+    * Creates a leaf with the specified minimum and maximum size.
+    *
+    * @param minimumSize
+    *           the minimum size, may be null
+    * @param maximumSize
+    *           the maximum size, may be null
+    */
+   public TOnionNode(Dimension minimumSize, Dimension maximumSize)
+   {
+      this.layer = null;
+      this.minimumSize = minimumSize;
+      this.maximumSize = maximumSize;
+      this.insets = new Insets(0, 0, 0, 0);
+      this.children = null;
+   }
+
+   /**
+    * Creates a layer with no gap.
+    *
+    * @param layer
+    *           the layer
+    */
+   public TOnionNode(Layer layer)
+   {
+      this(layer, 0);
+   }
+
+   /**
+    * Creates a layer with the specified gap.
+    *
+    * @param layer
+    *           the layer
+    * @param gap
+    *           the gap between children, ignored by BULLS_EYE
+    * @exception IllegalArgumentException
+    *               if the value of the gap is less than zero.
+    */
+   public TOnionNode(Layer layer, int gap)
+   {
+      if (layer == null)
+         throw new IllegalArgumentException("the layer can not be null");
+      if (gap < 0)
+         throw new IllegalArgumentException(
+               "the gap can not be a negativ number");
+      this.layer = layer;
+      this.gap = gap;
+      this.insets = new Insets(0, 0, 0, 0);
+      this.children = new ArrayList<TOnionNode>();
+   }
+
+   /**
+    * Gets the layer of the node.
+    *
+    * @return the layer, null for a leaf
+    */
+   public Layer getLayer()
+   {
+      return layer;
+   }
+
+   /**
+    * Gets the gap between children.
+    *
+    * @return the gap between children
+    */
+   public int getGap()
+   {
+      return gap;
+   }
+
+   /**
+    * Sets the gap between children to the specified value.
+    *
+    * @param gap
+    *           the gap between children
+    */
+   public void setGap(int gap)
+   {
+      if (gap < 0)
+         throw new IllegalArgumentException(
+               "the gap can not be a negativ number");
+      this.gap = gap;
+   }
+
+   /**
+    * Gets the way the available space is distributed among the children.
+    *
+    * @return the distribution mode
+    */
+   public DistributionMode getDistributionMode()
+   {
+      return distributionMode;
+   }
+
+   /**
+    * Sets the way the available space is distributed among the children,
+    * ignored by BULLS_EYE. The default is
+    * <code>DistributionMode.PROPORTIONAL</code>.
+    *
+    * @param distributionMode
+    *           the distribution mode
+    * @exception IllegalArgumentException
+    *               if the distribution mode is null
+    */
+   public void setDistributionMode(DistributionMode distributionMode)
+   {
+      if (distributionMode == null)
+         throw new IllegalArgumentException(
+               "the distribution mode can not be null");
+      this.distributionMode = distributionMode;
+   }
+
+   /**
+    * Gets the minimum size set on the node.
+    *
+    * @return the minimum size, may be null
+    */
+   public Dimension getMinimumSize()
+   {
+      return minimumSize;
+   }
+
+   /**
+    * Sets the minimum size of the node. A layer only uses it when empty.
+    *
+    * @param minimumSize
+    *           the minimum size, may be null
+    */
+   public void setMinimumSize(Dimension minimumSize)
+   {
+      this.minimumSize = minimumSize;
+   }
+
+   /**
+    * Gets the maximum size set on the node.
+    *
+    * @return the maximum size, may be null
+    */
+   public Dimension getMaximumSize()
+   {
+      return maximumSize;
+   }
+
+   /**
+    * Sets the maximum size of the node. A layer only uses it when empty.
+    *
+    * @param maximumSize
+    *           the maximum size, may be null
+    */
+   public void setMaximumSize(Dimension maximumSize)
+   {
+      this.maximumSize = maximumSize;
+   }
+
+   /**
+    * Gets the insets of the node.
+    *
+    * @return the insets
+    */
+   public Insets getInsets()
+   {
+      return insets;
+   }
+
+   /**
+    * Sets the insets of the node, like the border of a container.
+    *
+    * @param insets
+    *           the insets
+    */
+   public void setInsets(Insets insets)
+   {
+      if (insets == null)
+         throw new IllegalArgumentException("the insets can not be null");
+      this.insets = insets;
+   }
+
+   /**
+    * Appends a child to the layer.
+    *
+    * @param child
+    *           the child
+    * @return the child
+    * @exception IllegalArgumentException
+    *               if the node is a leaf or a BULLS_EYE that already has a
+    *               child
+    */
+   public TOnionNode add(TOnionNode child)
+   {
+      if (child == null)
+         throw new IllegalArgumentException("the child can not be null");
+      if (layer == null)
+         throw new IllegalArgumentException("a leaf can not hold children");
+      if (layer == Layer.BULLS_EYE && !children.isEmpty())
+         throw new IllegalArgumentException(
+               "BULLS_EYE can hold only one child");
+      children.add(child);
+      return child;
+   }
+
+   /**
+    * Removes the child at the specified index.
+    *
+    * @param index
+    *           the index of the child
+    */
+   public void remove(int index)
+   {
+      if (layer == null)
+         throw new IndexOutOfBoundsException("a leaf has no children");
+      children.remove(index);
+   }
+
+   /**
+    * Gets the number of children.
+    *
+    * @return the number of children, 0 for a leaf
+    */
+   public int getChildCount()
+   {
+      return children == null ? 0 : children.size();
+   }
+
+   /**
+    * Gets the child at the specified index.
+    *
+    * @param index
+    *           the index of the child
+    * @return the child
+    */
+   public TOnionNode getChild(int index)
+   {
+      if (children == null)
+         throw new IndexOutOfBoundsException("a leaf has no children");
+      return children.get(index);
+   }
+}
@@ -0,0 +1,424 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.Component;
+import java.awt.Container;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * A <code>TOnionProfiler</code> records the work of the TOnion layouts in one
+ * window, or any other part of a component tree, during an interaction like a
+ * resize drag, and reports the layers that took the most time.
+ * <p>
+ * For each TOnion layer the profiler sums up
+ * <ul>
+ * <li>the time spent in the layer itself, without the layers below, and the
+ * time including them,</li>
+ * <li>the number of layout passes,</li>
+ * <li>the number of size queries, how many of them were answered from the
+ * remembered size, and how many had to be recomputed,</li>
+ * <li>the number of components whose bounds were changed,</li>
+ * <li>the number of invalidations.</li>
+ * </ul>
+ *
+ * <pre>
+ * TOnionProfiler profiler = new TOnionProfiler(frame);
+ * profiler.start();
+ * // drag the window border for a few seconds
+ * profiler.stop();
+ * System.out.print(profiler.report());
+ * </pre>
+ * <p>
+ * <code>writeStacks</code> writes the self time of each layer as collapsed
+ * stacks, the layers from the root down separated by semicolons, which
+ * flame graph tools read directly.
+ * <p>
+ * While it records, the profiler is the listener of
+ * <code>TOnionInstrumentation</code>. It passes everything on to the listener
+ * installed before, e.g. the <code>TOnionFlightRecorder</code> of the module
+ * tonion-jfr, and reinstalls it when it stops. The report may be taken from
+ * any thread while the layouts are running, the profiler does not lock the
+ * component tree while it holds its own lock.
+ *
+ * @author Birke Heeren
+ * @since private
+ * @see TOnionInstrumentation
+ */
+public final class TOnionProfiler implements TOnionListener
+{
+   /**
+    * This is the root of the component tree that is recorded.
+    */
+   private final Component root;
+
+   /**
+    * The statistics of each layer below root, and the containers found to be
+    * outside of root.
+    */
+   private final Map<Container, Layer> layers =
+         new IdentityHashMap<Container, Layer>();
+   private final Map<Container, Boolean> outside =
+         new IdentityHashMap<Container, Boolean>();
+
+   /**
+    * The operations started and not yet finished, one stack per thread since
+    * size queries nest.
+    */
+   private final ThreadLocal<ArrayDeque<Frame>> open =
+         new ThreadLocal<ArrayDeque<Frame>>()
+         {
+            @Override
+            protected ArrayDeque<Frame> initialValue()
+            {
+               return new ArrayDeque<Frame>();
+            }
+         };
+
+   private TOnionListener previous;
+   private boolean recording;
+
+   /**
+    * Creates a profiler for a component tree.
+    *
+    * @param root
+    *           the root of the tree, e.g. a window
+    */
+   public TOnionProfiler(Component root)
+   {
+      if (root == null)
+         throw new IllegalArgumentException("root can not be null");
+      this.root = root;
+   }
+
+   /**
+    * Starts recording. The TOnion layers in the tree are looked up now,
+    * layers added while recording are picked up when they report first.
+    * Statistics of an earlier recording are kept, see reset().
+    */
+   public void start()
+   {
+      // the tree is walked before the profiler is locked, the layouts report
+      // while holding the tree lock
+      List<Container> found = new ArrayList<Container>();
+      collect(root, found);
+      synchronized (this)
+      {
+         if (recording)
+            return;
+         for (Container container : found)
+         {
+            if (!layers.containsKey(container))
+               layers.put(container, new Layer(container));
+         }
+         previous = TOnionInstrumentation.getListener();
+         TOnionInstrumentation.setListener(this);
+         recording = true;
+      }
+   }
+
+   /**
+    * Stops recording and reinstalls the listener that was installed before.
+    */
+   public synchronized void stop()
+   {
+      if (!recording)
+         return;
+      if (TOnionInstrumentation.getListener() == this)
+         TOnionInstrumentation.setListener(previous);
+      previous = null;
+      recording = false;
+   }
+
+   /**
+    * Discards all statistics.
+    */
+   public synchronized void reset()
+   {
+      layers.clear();
+      outside.clear();
+   }
+
+   @Override
+   public void started(Operation operation, Container self)
+   {
+      TOnionListener next;
+      synchronized (this)
+      {
+         next = previous;
+         open.get().push(new Frame(layer(self)));
+      }
+      if (next != null)
+         next.started(operation, self);
+   }
+
+   @Override
+   public void finished(Operation operation, Container self,
+         TOnionMeasurement measurement)
+   {
+      TOnionListener next;
+      synchronized (this)
+      {
+         next = previous;
+         ArrayDeque<Frame> frames = open.get();
+         Frame frame = frames.poll();
+         if (frame != null)
+         {
+            long nanos = measurement.getNanos();
+            Frame caller = frames.peek();
+            if (caller != null)
+               caller.childNanos += nanos;
+            Layer layer = frame.layer;
+            if (layer != null)
+            {
+               layer.selfNanos += Math.max(0, nanos - frame.childNanos);
+               // nested calls of the same layer are already included
+               if (!frames.isEmpty() && isOpen(frames, layer))
+                  nanos = 0;
+               layer.totalNanos += nanos;
+               layer.boundsSet += measurement.getBoundsSet();
+               if (operation == Operation.LAYOUT)
+                  layer.layouts++;
+               else if (measurement.isCached())
+                  layer.hits++;
+               else
+                  layer.recomputations++;
+            }
+         }
+      }
+      if (next != null)
+         next.finished(operation, self, measurement);
+   }
+
+   @Override
+   public void invalidated(Container self)
+   {
+      TOnionListener next;
+      synchronized (this)
+      {
+         next = previous;
+         Layer layer = layer(self);
+         if (layer != null)
+            layer.invalidations++;
+      }
+      if (next != null)
+         next.invalidated(self);
+   }
+
+   /**
+    * Reports the statistics of all layers that did any work, as a table
+    * sorted by self time, the slowest layer first.
+    *
+    * @return the report
+    */
+   public String report()
+   {
+      List<Layer> sorted = sortedLayers();
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format(Locale.ROOT,
+            "%10s %10s %8s %8s %8s %6s %9s %8s  %s%n", "self ms", "total ms",
+            "layouts", "queries", "recomp", "hit%", "setBounds", "invalid",
+            "layer"));
+      for (Layer layer : sorted)
+      {
+         int queries = layer.hits + layer.recomputations;
+         sb.append(String.format(Locale.ROOT,
+               "%10.3f %10.3f %8d %8d %8d %6s %9d %8d  %s%n",
+               layer.selfNanos / 1e6, layer.totalNanos / 1e6, layer.layouts,
+               queries, layer.recomputations,
+               queries == 0 ? "-"
+                     : String.format(Locale.ROOT, "%.1f",
+                           100.0 * layer.hits / queries),
+               layer.boundsSet, layer.invalidations, path(layer.container)));
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Writes the self time of each layer in microseconds as collapsed stacks,
+    * one line per layer with the path from the root separated by semicolons.
+    *
+    * @param out
+    *           where to write the stacks
+    * @throws IOException
+    *            if out throws it
+    */
+   public void writeStacks(Appendable out) throws IOException
+   {
+      for (Layer layer : sortedLayers())
+      {
+         long micros = layer.selfNanos / 1000;
+         if (micros == 0)
+            continue;
+         out.append(path(layer.container).replace(" > ", ";")).append(' ')
+               .append(Long.toString(micros)).append('\n');
+      }
+   }
+
+   /**
+    * Copies the statistics of all layers that did any work, sorted by self
+    * time. The copies are named without holding the profiler, since naming
+    * them locks the component tree.
+    */
+   private synchronized List<Layer> sortedLayers()
+   {
+      List<Layer> sorted = new ArrayList<Layer>();
+      for (Layer layer : layers.values())
+      {
+         if (layer.layouts + layer.hits + layer.recomputations
+               + layer.invalidations > 0)
+            sorted.add(new Layer(layer));
+      }
+      Collections.sort(sorted, new Comparator<Layer>()
+      {
+         @Override
+         public int compare(Layer a, Layer b)
+         {
+            return Long.compare(b.selfNanos, a.selfNanos);
+         }
+      });
+      return sorted;
+   }
+
+   private static boolean isOpen(ArrayDeque<Frame> frames, Layer layer)
+   {
+      for (Frame frame : frames)
+      {
+         if (frame.layer == layer)
+            return true;
+      }
+      return false;
+   }
+
+   /**
+    * Finds all TOnion layers of a component tree.
+    */
+   private static void collect(Component comp, List<Container> found)
+   {
+      if (!(comp instanceof Container))
+         return;
+      Container container = (Container) comp;
+      if (container.getLayout() instanceof TOnionLayer)
+         found.add(container);
+      for (Component child : container.getComponents())
+         collect(child, found);
+   }
+
+   /**
+    * Finds the statistics of a layer.
+    *
+    * @return the statistics, null if the container is not below root
+    */
+   private Layer layer(Container self)
+   {
+      Layer layer = layers.get(self);
+      if (layer != null || outside.containsKey(self))
+         return layer;
+      if (self == root || SwingUtilities.isDescendingFrom(self, root))
+      {
+         layer = new Layer(self);
+         layers.put(self, layer);
+      }
+      else
+      {
+         outside.put(self, Boolean.TRUE);
+      }
+      return layer;
+   }
+
+   /**
+    * Describes a layer by the TOnion layers from the root down to it.
+    */
+   private String path(Container self)
+   {
+      StringBuilder sb = new StringBuilder(name(self));
+      for (Container c = self.getParent(); c != null; c = c.getParent())
+      {
+         if (c.getLayout() instanceof TOnionLayer)
+            sb.insert(0, " > ").insert(0, name(c));
+         if (c == root)
+            break;
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Names a layer by the name of its container, or by the class and the
+    * index in its parent, followed by the layout.
+    */
+   private static String name(Container self)
+   {
+      String name = self.getName();
+      if (name == null)
+      {
+         name = self.getClass().getSimpleName();
+         Container parent = self.getParent();
+         if (parent != null)
+            name += "#" + parent.getComponentZOrder(self);
+      }
+      String layout = self.getLayout() == null ? "none"
+            : self.getLayout().getClass().getSimpleName();
+      return (name + "(" + layout + ")").replace(';', ',');
+   }
+
+   /**
+    * The statistics of one layer.
+    */
+   private static final class Layer
+   {
+      final Container container;
+      long selfNanos;
+      long totalNanos;
+      int layouts;
+      int hits;
+      int recomputations;
+      int boundsSet;
+      int invalidations;
+
+      Layer(Container container)
+      {
+         this.container = container;
+      }
+
+      Layer(Layer layer)
+      {
+         container = layer.container;
+         selfNanos = layer.selfNanos;
+         totalNanos = layer.totalNanos;
+         layouts = layer.layouts;
+         hits = layer.hits;
+         recomputations = layer.recomputations;
+         boundsSet = layer.boundsSet;
+         invalidations = layer.invalidations;
+      }
+   }
+
+   /**
+    * An operation that has started and not finished yet.
+    */
+   private static final class Frame
+   {
+      final Layer layer;
+      long childNanos;
+
+      Frame(Layer layer)
+      {
+         this.layer = layer;
+      }
+   }
+}
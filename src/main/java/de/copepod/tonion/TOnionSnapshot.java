@@ -0,0 +1,649 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.LayoutManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A <code>TOnionSnapshot</code> is an immutable record of a laid out window:
+ * the minimum and maximum sizes the TOnion layouts inside remember and the
+ * bounds of the containers that hold them. Restored into the same window at
+ * the same size, the first layout finds all sizes remembered and does not ask
+ * a single component for its minimum or maximum size. This pays off when the
+ * components compute their sizes, like labels and text fields do. Components
+ * with their sizes set answer at once, for a form of them alone restoring
+ * costs more than it saves.
+ * <p>
+ * A snapshot is captured once the window has been laid out, e.g. when it is
+ * closed, and written to a file:
+ *
+ * <pre>
+ * TOnionSnapshot snapshot = TOnionSnapshot.capture(frame);
+ * OutputStream out = new FileOutputStream(file);
+ * try
+ * {
+ *    snapshot.write(out);
+ * }
+ * finally
+ * {
+ *    out.close();
+ * }
+ * </pre>
+ * <p>
+ * On the next start the window is built and sized as before, its peers are
+ * created and the snapshot is restored before the window is shown:
+ *
+ * <pre>
+ * frame.setSize(size);
+ * frame.addNotify();
+ * TOnionSnapshot.read(in).restore(frame);
+ * frame.setVisible(true);
+ * </pre>
+ * <p>
+ * Creating the peers invalidates all layouts, a snapshot restored before
+ * would be discarded again. A snapshot only applies to a window of the same
+ * size and structure, see <code>structuralHash(Container)</code>, otherwise
+ * <code>restore</code> does nothing. The hash only covers the TOnion layouts
+ * and the containers around them, so it is cheap to check. Anything else
+ * that changes the sizes, e.g. the look and feel, the texts of labels or the
+ * minimum and maximum sizes set on the components, must be part of the name
+ * of the file.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+public final class TOnionSnapshot
+{
+   /**
+    * The first bytes of a snapshot file, "TOSN", and the version of the
+    * format.
+    */
+   private static final int MAGIC = 0x544F534E;
+   private static final int VERSION = 2;
+
+   /**
+    * FNV-1a offset basis and prime for 64 bits.
+    */
+   private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+   private static final long FNV_PRIME = 0x100000001b3L;
+
+   /**
+    * the structural hash of the window
+    */
+   private final long hash;
+
+   /**
+    * the size of the window
+    */
+   private final int width;
+   private final int height;
+
+   /**
+    * x, y, width and height of each container below the window that holds a
+    * TOnion layout or has one below it, parents before children
+    */
+   private final int[] bounds;
+
+   /**
+    * the TOnion layouts of the window and of these containers, in the same
+    * order
+    */
+   private final Layer[] layers;
+
+   private TOnionSnapshot(long hash, int width, int height, int[] bounds,
+         Layer[] layers)
+   {
+      this.hash = hash;
+      this.width = width;
+      this.height = height;
+      this.bounds = bounds;
+      this.layers = layers;
+   }
+
+   /**
+    * Captures a laid out window, or any other container. Sizes a TOnion
+    * layout does not remember yet are asked for.
+    *
+    * @param root
+    *           the window
+    * @return the snapshot
+    * @exception IllegalArgumentException
+    *               if the window is null
+    */
+   public static TOnionSnapshot capture(Container root)
+   {
+      if (root == null)
+         throw new IllegalArgumentException("root can not be null");
+      synchronized (root.getTreeLock())
+      {
+         List<Container> spine = new ArrayList<Container>();
+         long hash = hash(root, FNV_OFFSET, spine);
+         // the window itself is not moved, only its layout is captured
+         int[] bounds = new int[4 * Math.max(spine.size() - 1, 0)];
+         List<Layer> layers = new ArrayList<Layer>();
+         for (int i = 0; i < spine.size(); i++)
+         {
+            Container c = spine.get(i);
+            if (i > 0)
+            {
+               bounds[4 * i - 4] = c.getX();
+               bounds[4 * i - 3] = c.getY();
+               bounds[4 * i - 2] = c.getWidth();
+               bounds[4 * i - 1] = c.getHeight();
+            }
+            if (engineOf(c) != null)
+               layers.add(Layer.capture(c));
+         }
+         return new TOnionSnapshot(hash, root.getWidth(), root.getHeight(),
+               bounds, layers.toArray(new Layer[layers.size()]));
+      }
+   }
+
+   /**
+    * Computes a hash of the structure of a window: the TOnion layouts, their
+    * gaps, distribution modes and numbers of components, which of their
+    * components hold TOnion layouts themselves, and the layouts of the
+    * containers in between. Components without a TOnion layout below them
+    * are not looked at beyond that.
+    *
+    * @param root
+    *           the window
+    * @return the hash
+    */
+   public static long structuralHash(Container root)
+   {
+      synchronized (root.getTreeLock())
+      {
+         return hash(root, FNV_OFFSET, new ArrayList<Container>());
+      }
+   }
+
+   /**
+    * Returns the structural hash of the window the snapshot was captured
+    * from.
+    *
+    * @return the structural hash
+    * @see #structuralHash(Container)
+    */
+   public long getStructuralHash()
+   {
+      return hash;
+   }
+
+   /**
+    * Returns the size of the window the snapshot was captured from.
+    *
+    * @return the size of the window
+    */
+   public Dimension getSize()
+   {
+      return new Dimension(width, height);
+   }
+
+   /**
+    * Restores the snapshot into a window of the same size and structure. The
+    * containers that hold TOnion layouts get the bounds they had, the TOnion
+    * layouts the minimum and maximum sizes they remembered. The other
+    * components are placed by the first layout.
+    *
+    * @param root
+    *           the window
+    * @return false if the size or the structure of the window is not the
+    *         same and nothing was restored
+    * @exception IllegalArgumentException
+    *               if the window is null
+    */
+   public boolean restore(Container root)
+   {
+      if (root == null)
+         throw new IllegalArgumentException("root can not be null");
+      synchronized (root.getTreeLock())
+      {
+         if (root.getWidth() != width || root.getHeight() != height)
+            return false;
+         List<Container> spine = new ArrayList<Container>();
+         if (hash(root, FNV_OFFSET, spine) != hash
+               || 4 * Math.max(spine.size() - 1, 0) != bounds.length)
+            return false;
+         for (int i = 1; i < spine.size(); i++)
+         {
+            Container c = spine.get(i);
+            int x = bounds[4 * i - 4];
+            int y = bounds[4 * i - 3];
+            int w = bounds[4 * i - 2];
+            int h = bounds[4 * i - 1];
+            if (c.getX() != x || c.getY() != y || c.getWidth() != w
+                  || c.getHeight() != h)
+               c.setBounds(x, y, w, h);
+         }
+         // resizing a container invalidates its layout, so the layouts are
+         // restored after all bounds
+         int k = 0;
+         for (Container c : spine)
+         {
+            if (engineOf(c) == null)
+               continue;
+            if (k == layers.length)
+               return false;
+            layers[k++].restore(c);
+         }
+         return true;
+      }
+   }
+
+   /**
+    * Writes the snapshot in a compact binary format. The stream is not
+    * closed.
+    *
+    * @param out
+    *           the stream to write to
+    * @throws IOException
+    *            if the stream can not be written
+    */
+   public void write(OutputStream out) throws IOException
+   {
+      Output data = new Output(64 + 3 * bounds.length);
+      data.writeFixed(MAGIC, 4);
+      data.writeFixed(VERSION, 1);
+      data.writeFixed(hash, 8);
+      data.writeInt(width);
+      data.writeInt(height);
+      data.writeInt(bounds.length / 4);
+      for (int value : bounds)
+         data.writeInt(value);
+      data.writeInt(layers.length);
+      for (Layer layer : layers)
+         layer.write(data);
+      out.write(data.buf, 0, data.count);
+   }
+
+   /**
+    * Reads a snapshot written by <code>write(OutputStream)</code>. The stream
+    * is read to its end, but not closed.
+    *
+    * @param in
+    *           the stream to read from
+    * @return the snapshot
+    * @throws IOException
+    *            if the stream can not be read or does not hold a snapshot
+    */
+   public static TOnionSnapshot read(InputStream in) throws IOException
+   {
+      Input data = new Input(in);
+      if (data.readFixed(4) != MAGIC)
+         throw new IOException("not a TOnion snapshot");
+      int version = (int) data.readFixed(1);
+      if (version != VERSION)
+         throw new IOException("unsupported snapshot version " + version);
+      long hash = data.readFixed(8);
+      int width = data.readInt();
+      int height = data.readInt();
+      int[] bounds = new int[4 * data.readCount()];
+      for (int i = 0; i < bounds.length; i++)
+         bounds[i] = data.readInt();
+      Layer[] layers = new Layer[data.readCount()];
+      for (int i = 0; i < layers.length; i++)
+         layers[i] = Layer.read(data);
+      return new TOnionSnapshot(hash, width, height, bounds, layers);
+   }
+
+   /**
+    * Returns the engine of a component laid out by a TOnion layout, null for
+    * any other component.
+    */
+   private static OnionLayoutEngine engineOf(Component c)
+   {
+      if (!(c instanceof Container))
+         return null;
+      LayoutManager layout = ((Container) c).getLayout();
+      if (layout instanceof TotemLayout)
+         return ((TotemLayout) layout).getEngine();
+      if (layout instanceof TrainLayout)
+         return ((TrainLayout) layout).getEngine();
+      if (layout instanceof BullsEyeLayout)
+         return ((BullsEyeLayout) layout).getEngine();
+      return null;
+   }
+
+   /**
+    * Continues the hash of the components before with a component and the
+    * components below it.
+    *
+    * @param spine
+    *           receives the component if it holds a TOnion layout or has one
+    *           below it, and such containers below it, parents before children
+    */
+   private static long hash(Component c, long h, List<Container> spine)
+   {
+      if (!(c instanceof Container))
+         return h;
+      Container container = (Container) c;
+      int ncomponents = container.getComponentCount();
+      boolean layer = engineOf(container) != null;
+      if (!layer && ncomponents == 0)
+         return h;
+      int mark = spine.size();
+      spine.add(container);
+      long below = h;
+      LayoutManager layout = container.getLayout();
+      below = mix(below,
+            layout == null ? 0 : layout.getClass().getName().hashCode());
+      if (layout instanceof TotemLayout)
+      {
+         TotemLayout totem = (TotemLayout) layout;
+         below = mix(below, totem.getVgap());
+         below = mix(below, totem.getDistributionMode().ordinal());
+      }
+      else if (layout instanceof TrainLayout)
+      {
+         TrainLayout train = (TrainLayout) layout;
+         below = mix(below, train.getHgap());
+         below = mix(below, train.getDistributionMode().ordinal());
+      }
+      below = mix(below, ncomponents);
+      for (int i = 0; i < ncomponents; i++)
+      {
+         Component child = container.getComponent(i);
+         if (layer)
+            below = mixByte(below, engineOf(child) != null ? 1 : 0);
+         below = hash(child, below, spine);
+      }
+      if (layer || spine.size() > mark + 1)
+         return below;
+      // nothing below is laid out by TOnion
+      spine.remove(mark);
+      return h;
+   }
+
+   private static long mix(long h, int value)
+   {
+      for (int shift = 0; shift < 32; shift += 8)
+         h = mixByte(h, value >>> shift);
+      return h;
+   }
+
+   private static long mixByte(long h, int value)
+   {
+      return (h ^ (value & 0xff)) * FNV_PRIME;
+   }
+
+   /**
+    * What a TOnion layout remembers: the minimum and maximum size of its
+    * content and the tables of the minimum and maximum sizes of its
+    * components.
+    */
+   private static final class Layer
+   {
+      private final Dimension min;
+      private final Dimension max;
+      private final Table minimum;
+      private final Table maximum;
+
+      private Layer(Dimension min, Dimension max, Table minimum,
+            Table maximum)
+      {
+         this.min = min;
+         this.max = max;
+         this.minimum = minimum;
+         this.maximum = maximum;
+      }
+
+      static Layer capture(Container self)
+      {
+         TOnionLayer layout = (TOnionLayer) self.getLayout();
+         Dimension min = copy(layout.minimumLayoutSize(self));
+         Dimension max = copy(layout.maximumLayoutSize(self));
+         OnionLayoutEngine engine = engineOf(self);
+         int ncomponents = self.getComponentCount();
+         return new Layer(min, max,
+               Table.capture(engine.getSizes(true), ncomponents),
+               Table.capture(engine.getSizes(false), ncomponents));
+      }
+
+      void restore(Container self)
+      {
+         OnionLayoutEngine engine = engineOf(self);
+         if (minimum != null)
+            minimum.restore(engine, true);
+         if (maximum != null)
+            maximum.restore(engine, false);
+         LayoutManager layout = self.getLayout();
+         if (layout instanceof TotemLayout)
+            ((TotemLayout) layout).restoreContentSize(copy(min), copy(max));
+         else if (layout instanceof TrainLayout)
+            ((TrainLayout) layout).restoreContentSize(copy(min), copy(max));
+         else
+            ((BullsEyeLayout) layout).restoreContentSize(copy(min),
+                  copy(max));
+      }
+
+      void write(Output out)
+      {
+         writeDimension(out, min);
+         writeDimension(out, max);
+         Table.write(out, minimum);
+         Table.write(out, maximum);
+      }
+
+      static Layer read(Input in) throws IOException
+      {
+         Dimension min = readDimension(in);
+         Dimension max = readDimension(in);
+         return new Layer(min, max, Table.read(in), Table.read(in));
+      }
+
+      private static Dimension copy(Dimension d)
+      {
+         return d == null ? null : new Dimension(d);
+      }
+
+      private static void writeDimension(Output out, Dimension d)
+      {
+         out.writeFixed(d != null ? 1 : 0, 1);
+         if (d != null)
+         {
+            out.writeInt(d.width);
+            out.writeInt(d.height);
+         }
+      }
+
+      private static Dimension readDimension(Input in) throws IOException
+      {
+         if (in.readFixed(1) == 0)
+            return null;
+         int w = in.readInt();
+         return new Dimension(w, in.readInt());
+      }
+   }
+
+   /**
+    * The remembered minimum or maximum sizes of the components of a layer,
+    * along the main and the cross axis of its engine.
+    */
+   private static final class Table
+   {
+      private final boolean[] set;
+      private final int[] main;
+      private final int[] cross;
+
+      private Table(boolean[] set, int[] main, int[] cross)
+      {
+         this.set = set;
+         this.main = main;
+         this.cross = cross;
+      }
+
+      /**
+       * Copies the sizes an engine remembers, null if they are not up to
+       * date.
+       */
+      static Table capture(OnionLayoutEngine.Sizes sizes, int ncomponents)
+      {
+         if (sizes == null || sizes.count != ncomponents || sizes.dirty
+               || sizes.pendingCount > 0)
+            return null;
+         boolean[] set = new boolean[ncomponents];
+         int[] main = new int[ncomponents];
+         int[] cross = new int[ncomponents];
+         System.arraycopy(sizes.set, 0, set, 0, ncomponents);
+         System.arraycopy(sizes.main, 0, main, 0, ncomponents);
+         System.arraycopy(sizes.cross, 0, cross, 0, ncomponents);
+         return new Table(set, main, cross);
+      }
+
+      void restore(OnionLayoutEngine engine, boolean minimum)
+      {
+         engine.restoreSizes(minimum, set.length, set, main, cross);
+      }
+
+      static void write(Output out, Table table)
+      {
+         if (table == null)
+         {
+            out.writeInt(0);
+            return;
+         }
+         out.writeInt(table.set.length + 1);
+         for (int i = 0; i < table.set.length; i++)
+         {
+            out.writeFixed(table.set[i] ? 1 : 0, 1);
+            if (table.set[i])
+            {
+               out.writeInt(table.main[i]);
+               out.writeInt(table.cross[i]);
+            }
+         }
+      }
+
+      static Table read(Input in) throws IOException
+      {
+         // the number of components plus one, 0 for no table
+         int ncomponents = in.readCount() - 1;
+         if (ncomponents < 0)
+            return null;
+         boolean[] set = new boolean[ncomponents];
+         int[] main = new int[ncomponents];
+         int[] cross = new int[ncomponents];
+         for (int i = 0; i < ncomponents; i++)
+         {
+            set[i] = in.readFixed(1) != 0;
+            if (set[i])
+            {
+               main[i] = in.readInt();
+               cross[i] = in.readInt();
+            }
+         }
+         return new Table(set, main, cross);
+      }
+   }
+
+   /**
+    * The bytes of a snapshot being written. Small numbers of either sign take
+    * one byte as zigzag varints.
+    */
+   private static final class Output
+   {
+      private byte[] buf;
+      private int count;
+
+      Output(int capacity)
+      {
+         buf = new byte[capacity];
+      }
+
+      void writeFixed(long value, int nbytes)
+      {
+         for (int shift = 8 * (nbytes - 1); shift >= 0; shift -= 8)
+            writeByte((int) (value >>> shift));
+      }
+
+      void writeInt(int value)
+      {
+         int v = (value << 1) ^ (value >> 31);
+         while ((v & ~0x7f) != 0)
+         {
+            writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+         }
+         writeByte(v);
+      }
+
+      private void writeByte(int b)
+      {
+         if (count == buf.length)
+            buf = Arrays.copyOf(buf, 2 * buf.length);
+         buf[count++] = (byte) b;
+      }
+   }
+
+   /**
+    * The bytes of a snapshot being read, the stream is read at once.
+    */
+   private static final class Input
+   {
+      private byte[] buf = new byte[8192];
+      private int count;
+      private int pos;
+
+      Input(InputStream in) throws IOException
+      {
+         int n;
+         while ((n = in.read(buf, count, buf.length - count)) >= 0)
+         {
+            count += n;
+            if (count == buf.length)
+               buf = Arrays.copyOf(buf, 2 * buf.length);
+         }
+      }
+
+      long readFixed(int nbytes) throws IOException
+      {
+         long value = 0;
+         for (int i = 0; i < nbytes; i++)
+            value = (value << 8) | readByte();
+         return value;
+      }
+
+      int readInt() throws IOException
+      {
+         int v = 0;
+         for (int shift = 0; shift < 35; shift += 7)
+         {
+            int b = readByte();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+               return (v >>> 1) ^ -(v & 1);
+         }
+         throw new IOException("corrupt TOnion snapshot");
+      }
+
+      int readCount() throws IOException
+      {
+         int count = readInt();
+         if (count < 0 || count > this.count)
+            throw new IOException("corrupt TOnion snapshot");
+         return count;
+      }
+
+      private int readByte() throws IOException
+      {
+         if (pos == count)
+            throw new IOException("truncated TOnion snapshot");
+         return buf[pos++] & 0xff;
+      }
+   }
+}
@@ -0,0 +1,505 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.copepod.tonion.OnionLayoutEngine.Distribution;
+import de.copepod.tonion.OnionLayoutEngine.Scratch;
+import de.copepod.tonion.OnionLayoutEngine.Sizes;
+
+/**
+ * The <code>TOnionSolver</code> lays out a tree of <code>TOnionNode</code>s
+ * without any AWT component, e.g. for printing on a server without display.
+ * <p>
+ * The solver does the same distribution as <code>TotemLayout</code>,
+ * <code>TrainLayout</code> and <code>BullsEyeLayout</code>. A tree of nodes
+ * gets the same bounds as a tree of containers with the same minimum and
+ * maximum sizes, gaps and insets in its first layout pass. Sizes that are
+ * estimated because a minimum or maximum size is not set are estimated from
+ * a container size of 0, a container has no size before its first layout.
+ * <p>
+ * A solver keeps its buffers between two calls of solve, so it should be
+ * reused. A solver must not be used by more than one thread at a time, use
+ * one solver per thread.
+ * <p>
+ * Once the parent has assigned their bounds, the subtrees of its children do
+ * not depend on each other. A solver created with a
+ * <code>ForkJoinPool</code> solves large subtrees in parallel: every subtree
+ * with more nodes than the threshold is split into its children. The result
+ * does not depend on the split, it is the same as the sequential result. The
+ * bounds are returned to the thread that called solve.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+public class TOnionSolver
+{
+   /**
+    * These are the nodes of the tree being solved in preorder, and for each
+    * node the number of nodes in its subtree. The children of node i start at
+    * i + 1, the next child follows after the subtree of the child before.
+    */
+   private TOnionNode[] nodes;
+   private int[] subtree;
+
+   /**
+    * These are the minimum and maximum sizes of each node as seen by its
+    * parent, derived from its children if it has any.
+    */
+   private int[] minWidth;
+   private int[] minHeight;
+   private boolean[] minSet;
+   private int[] maxWidth;
+   private int[] maxHeight;
+   private boolean[] maxSet;
+
+   /**
+    * These are the buffers of the sequential solver.
+    */
+   private final Buffers buffers = new Buffers();
+
+   /**
+    * This is the pool for parallel solving, null for a sequential solver.
+    */
+   private final ForkJoinPool pool;
+
+   /**
+    * Subtrees with more nodes than the threshold are solved in parallel.
+    */
+   private final int threshold;
+
+   /**
+    * Creates a sequential solver.
+    */
+   public TOnionSolver()
+   {
+      this.pool = null;
+      this.threshold = Integer.MAX_VALUE;
+   }
+
+   /**
+    * Creates a solver that solves large subtrees in parallel.
+    *
+    * @param pool
+    *           the pool to solve subtrees in
+    * @param threshold
+    *           subtrees with more nodes are split into their children
+    * @exception IllegalArgumentException
+    *               if the threshold is less than one.
+    */
+   public TOnionSolver(ForkJoinPool pool, int threshold)
+   {
+      if (pool == null)
+         throw new IllegalArgumentException("the pool can not be null");
+      if (threshold < 1)
+         throw new IllegalArgumentException(
+               "the threshold must be a positive number");
+      this.pool = pool;
+      this.threshold = threshold;
+   }
+
+   /**
+    * Lays out a tree of nodes.
+    * <p>
+    * The bounds of all nodes are returned in preorder, the root first, then
+    * the subtree of its first child, then the subtree of its second child and
+    * so on. Unlike the bounds of a component the bounds are relative to the
+    * root, not to the parent.
+    *
+    * @param root
+    *           the root of the tree
+    * @param width
+    *           the width available for the root
+    * @param height
+    *           the height available for the root
+    * @return the bounds of all nodes in preorder
+    */
+   public Rectangle[] solve(TOnionNode root, int width, int height)
+   {
+      int count = count(root);
+      ensureCapacity(count);
+      index(root, 0);
+      Rectangle[] bounds = new Rectangle[count];
+      bounds[0] = new Rectangle(0, 0, width, height);
+      try
+      {
+         if (count > threshold)
+         {
+            pool.invoke(new MeasureTask(0));
+            pool.invoke(new PlaceTask(0, bounds));
+         }
+         else
+         {
+            measure(0, count, buffers);
+            place(0, count, bounds, buffers);
+         }
+      }
+      finally
+      {
+         Arrays.fill(nodes, 0, count, null);
+      }
+      return bounds;
+   }
+
+   /**
+    * Measures the nodes from index to end, in reverse order.
+    */
+   private void measure(int index, int end, Buffers buffers)
+   {
+      for (int i = end - 1; i >= index; i--)
+      {
+         measure(i, buffers);
+      }
+   }
+
+   /**
+    * Places the children of the nodes from index to end, in order.
+    */
+   private void place(int index, int end, Rectangle[] bounds,
+         Buffers buffers)
+   {
+      for (int i = index; i < end; i++)
+      {
+         place(i, bounds, buffers);
+      }
+   }
+
+   /**
+    * Counts the nodes of a tree.
+    */
+   private static int count(TOnionNode node)
+   {
+      int count = 1;
+      for (int i = 0; i < node.getChildCount(); i++)
+      {
+         count += count(node.getChild(i));
+      }
+      return count;
+   }
+
+   private void ensureCapacity(int count)
+   {
+      if (nodes == null || nodes.length < count)
+      {
+         nodes = new TOnionNode[count];
+         subtree = new int[count];
+         minWidth = new int[count];
+         minHeight = new int[count];
+         minSet = new boolean[count];
+         maxWidth = new int[count];
+         maxHeight = new int[count];
+         maxSet = new boolean[count];
+      }
+   }
+
+   /**
+    * Enters the subtree of a node in preorder, starting at index.
+    *
+    * @return the number of nodes in the subtree
+    */
+   private int index(TOnionNode node, int index)
+   {
+      nodes[index] = node;
+      int next = index + 1;
+      for (int i = 0; i < node.getChildCount(); i++)
+      {
+         next += index(node.getChild(i), next);
+      }
+      subtree[index] = next - index;
+      return subtree[index];
+   }
+
+   /**
+    * Determines the minimum and maximum size of node i, all nodes after i
+    * must be measured already.
+    */
+   private void measure(int i, Buffers buffers)
+   {
+      TOnionNode node = nodes[i];
+      int nchildren = node.getChildCount();
+      if (nchildren == 0)
+      {
+         minSet[i] = node.getMinimumSize() != null;
+         if (minSet[i])
+         {
+            minWidth[i] = node.getMinimumSize().width;
+            minHeight[i] = node.getMinimumSize().height;
+         }
+         maxSet[i] = node.getMaximumSize() != null;
+         if (maxSet[i])
+         {
+            maxWidth[i] = node.getMaximumSize().width;
+            maxHeight[i] = node.getMaximumSize().height;
+         }
+         return;
+      }
+
+      Insets insets = node.getInsets();
+      minSet[i] = true;
+      maxSet[i] = true;
+      if (node.getLayer() == TOnionNode.Layer.BULLS_EYE)
+      {
+         int child = i + 1;
+         if (minSet[child])
+         {
+            minWidth[i] = Math.max(0, minWidth[child]);
+            minHeight[i] = Math.max(0, minHeight[child]);
+         }
+         else
+         {
+            minWidth[i] = 0 - (insets.left + insets.right);
+            minHeight[i] = 0 - (insets.top + insets.bottom);
+         }
+         if (maxSet[child])
+         {
+            maxWidth[i] = Math.max(0, maxWidth[child]);
+            maxHeight[i] = Math.max(0, maxHeight[child]);
+         }
+         else
+         {
+            maxWidth[i] = 0 - (insets.left + insets.right);
+            maxHeight[i] = 0 - (insets.top + insets.bottom);
+         }
+         return;
+      }
+
+      boolean vertical = node.getLayer() == TOnionNode.Layer.TOTEM;
+      int mainInsets = vertical ? insets.top + insets.bottom
+            : insets.left + insets.right;
+      int crossInsets = vertical ? insets.left + insets.right
+            : insets.top + insets.bottom;
+      int gaps = (nchildren - 1) * node.getGap();
+      load(i, nchildren, vertical, buffers);
+
+      Sizes minimum = buffers.minimum;
+      Sizes maximum = buffers.maximum;
+      int main = mainInsets
+            + minimum.total(nchildren, (0 - mainInsets) / nchildren) + gaps;
+      int cross = crossInsets + minimum.largestCross(nchildren);
+      minWidth[i] = vertical ? cross : main;
+      minHeight[i] = vertical ? main : cross;
+
+      main = mainInsets
+            + maximum.total(nchildren, (0 - mainInsets) / nchildren) + gaps;
+      cross = crossInsets + maximum.smallestCross(nchildren);
+      maxWidth[i] = vertical ? cross : main;
+      maxHeight[i] = vertical ? main : cross;
+   }
+
+   /**
+    * Determines the bounds of the children of node i, the bounds of node i
+    * must be known already.
+    */
+   private void place(int i, Rectangle[] bounds, Buffers buffers)
+   {
+      TOnionNode node = nodes[i];
+      int nchildren = node.getChildCount();
+      if (nchildren == 0)
+         return;
+
+      Rectangle b = bounds[i];
+      Insets insets = node.getInsets();
+      int availableWidth = b.width - (insets.left + insets.right);
+      int availableHeight = b.height - (insets.top + insets.bottom);
+      if (node.getLayer() == TOnionNode.Layer.BULLS_EYE)
+      {
+         int child = i + 1;
+         int wmin = minSet[child] ? Math.max(0, minWidth[child]) : 0;
+         int hmin = minSet[child] ? Math.max(0, minHeight[child]) : 0;
+         int wmax = maxSet[child] ? maxWidth[child] : Integer.MAX_VALUE;
+         int hmax = maxSet[child] ? maxHeight[child] : Integer.MAX_VALUE;
+         int w = OnionLayoutEngine.clamp(availableWidth, wmin, wmax);
+         int h = OnionLayoutEngine.clamp(availableHeight, hmin, hmax);
+         int x = Math.max(insets.left,
+               (availableWidth - w) / 2 + insets.left);
+         int y = Math.max(insets.top,
+               (availableHeight - h) / 2 + insets.top);
+         bounds[child] = new Rectangle(b.x + x, b.y + y, w, h);
+         return;
+      }
+
+      boolean vertical = node.getLayer() == TOnionNode.Layer.TOTEM;
+      int gap = node.getGap();
+      int availableMain = (vertical ? availableHeight : availableWidth)
+            - gap * (nchildren - 1);
+      int availableCross = vertical ? availableWidth : availableHeight;
+      load(i, nchildren, vertical, buffers);
+      Distribution d = buffers.distribution;
+      OnionLayoutEngine.distribute(buffers.minimum, buffers.maximum, nchildren,
+            availableMain, availableCross, node.getDistributionMode(), d,
+            buffers.scratch, null);
+
+      int position = vertical ? insets.top : insets.left;
+      int child = i + 1;
+      for (int j = 0; j < nchildren; j++)
+      {
+         if (vertical)
+            bounds[child] = new Rectangle(b.x + insets.left, b.y + position,
+                  d.cross, d.sizes[j]);
+         else
+            bounds[child] = new Rectangle(b.x + position, b.y + insets.top,
+                  d.sizes[j], d.cross);
+         position += d.sizes[j] + gap;
+         child += subtree[child];
+      }
+   }
+
+   /**
+    * Loads the minimum and maximum sizes of the children of node i into the
+    * tables for the distribution.
+    */
+   private void load(int i, int nchildren, boolean vertical,
+         Buffers buffers)
+   {
+      Sizes minimum = buffers.minimum;
+      Sizes maximum = buffers.maximum;
+      minimum.ensureCapacity(nchildren);
+      maximum.ensureCapacity(nchildren);
+      int child = i + 1;
+      for (int j = 0; j < nchildren; j++)
+      {
+         minimum.set[j] = minSet[child];
+         minimum.main[j] = vertical ? minHeight[child] : minWidth[child];
+         minimum.cross[j] = vertical ? minWidth[child] : minHeight[child];
+         maximum.set[j] = maxSet[child];
+         maximum.main[j] = vertical ? maxHeight[child] : maxWidth[child];
+         maximum.cross[j] = vertical ? maxWidth[child] : maxHeight[child];
+         child += subtree[child];
+      }
+   }
+
+   /**
+    * Lists the children of node i whose subtrees are larger than the
+    * threshold.
+    */
+   private List<Integer> largeChildren(int i)
+   {
+      List<Integer> large = new ArrayList<Integer>();
+      int child = i + 1;
+      for (int j = 0; j < nodes[i].getChildCount(); j++)
+      {
+         if (subtree[child] > threshold)
+            large.add(child);
+         child += subtree[child];
+      }
+      return large;
+   }
+
+   /**
+    * Measures the subtree of a node, splitting it into the subtrees of its
+    * children if it is larger than the threshold.
+    */
+   private final class MeasureTask extends RecursiveAction
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final int index;
+
+      MeasureTask(int index)
+      {
+         this.index = index;
+      }
+
+      @Override
+      protected void compute()
+      {
+         Buffers buffers = new Buffers();
+         if (subtree[index] <= threshold)
+         {
+            measure(index, index + subtree[index], buffers);
+            return;
+         }
+         List<MeasureTask> tasks = new ArrayList<MeasureTask>();
+         for (int child : largeChildren(index))
+         {
+            tasks.add(new MeasureTask(child));
+            tasks.get(tasks.size() - 1).fork();
+         }
+         // the small subtrees are measured while the large ones are forked
+         int child = index + 1;
+         for (int j = 0; j < nodes[index].getChildCount(); j++)
+         {
+            if (subtree[child] <= threshold)
+               measure(child, child + subtree[child], buffers);
+            child += subtree[child];
+         }
+         for (MeasureTask task : tasks)
+         {
+            task.join();
+         }
+         measure(index, buffers);
+      }
+   }
+
+   /**
+    * Places the subtree of a node, whose bounds are known already, splitting
+    * it into the subtrees of its children if it is larger than the threshold.
+    */
+   private final class PlaceTask extends RecursiveAction
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final int index;
+      private final Rectangle[] bounds;
+
+      PlaceTask(int index, Rectangle[] bounds)
+      {
+         this.index = index;
+         this.bounds = bounds;
+      }
+
+      @Override
+      protected void compute()
+      {
+         Buffers buffers = new Buffers();
+         if (subtree[index] <= threshold)
+         {
+            place(index, index + subtree[index], bounds, buffers);
+            return;
+         }
+         place(index, bounds, buffers);
+         List<PlaceTask> tasks = new ArrayList<PlaceTask>();
+         for (int child : largeChildren(index))
+         {
+            tasks.add(new PlaceTask(child, bounds));
+            tasks.get(tasks.size() - 1).fork();
+         }
+         // the small subtrees are placed while the large ones are forked
+         int child = index + 1;
+         for (int j = 0; j < nodes[index].getChildCount(); j++)
+         {
+            if (subtree[child] <= threshold)
+               place(child, child + subtree[child], bounds, buffers);
+            child += subtree[child];
+         }
+         for (PlaceTask task : tasks)
+         {
+            task.join();
+         }
+      }
+   }
+
+   /**
+    * The sizes of the children of one layer and the buffers to distribute the
+    * available space among them. Each thread needs its own.
+    */
+   private static final class Buffers
+   {
+      final Sizes minimum = new Sizes();
+      final Sizes maximum = new Sizes();
+      final Scratch scratch = new Scratch();
+      final Distribution distribution = new Distribution();
+   }
+}
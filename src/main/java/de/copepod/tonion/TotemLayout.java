@@ -14,8 +14,14 @@ import java.awt.Dimension;
 import java.awt.Insets;
 import java.awt.LayoutManager;
 import java.awt.LayoutManager2;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
 
 import javax.swing.JViewport;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import de.copepod.tonion.TOnionListener.Operation;
 
 /**
  * The <code>TotemLayout</code> class is a layout manager that lays out a
@@ -35,9 +41,11 @@ import javax.swing.JViewport;
  * Even though TOnionLayout is done top-down each layer inquires about the
  * minimum and maximum sizes of all its components. To acquire a good
  * performance each layer caches the overall minimum and maximum size of its
- * components. Therefore TotemLayout can not be shared. Adding or removing a
+ * components as well as the minimum and maximum size of each component.
+ * Therefore TotemLayout can not be shared. Adding or removing a
  * component invalidates the cache of the layout and all TOnion layouts above
- * it.
+ * it. Components added between <code>beginBatch()</code> and
+ * <code>commitBatch()</code> invalidate the layouts above only once.
  * <p>
  * All first components inside a TOnionLayout must have a minimum and maximum
  * size set for the layout to function properly, otherwise minimum and maximum
@@ -52,7 +60,9 @@ import javax.swing.JViewport;
  * <p>
  * TOnionLayout can be placed inside a JScrollPane. If the window size is
  * deceased TOnionLayout will shrink to its minimum size before the scroll bars
- * appear.
+ * appear. A virtualized <code>TotemLayout</code> inside a JScrollPane only
+ * places the components near the visible part of a very long form, see
+ * <code>setVirtualized(boolean)</code>.
  * <p>
  * TOnionLayout corrects inconsistencies of minimum and maximum sizes with
  * maximum = minimum;
@@ -62,7 +72,8 @@ import javax.swing.JViewport;
  * @version TotemLayout 3.0 (released 20. July 2020)
  */
 public class TotemLayout
-      implements LayoutManager, LayoutManager2, java.io.Serializable
+      implements LayoutManager, LayoutManager2, TOnionLayer,
+      java.io.Serializable
 {
    /*
     * serialVersionUID
@@ -98,11 +109,56 @@ public class TotemLayout
     */
    private Dimension dimMax;
 
+   /**
+    * TotemLayout leaves the work to an engine, which also remembers the
+    * minimum and maximum size of each component and the last distributions of
+    * the available height.
+    */
+   private final OnionLayoutEngine engine = new OnionLayoutEngine(true);
+
    /**
     * This is the container TotemLayout is assigned to.
     */
    private Container self;
+
+   /**
+    * true if the layers above were invalidated and the content sizes were not
+    * asked for since. Further invalidations need not be passed on then, the
+    * layers above are still dirty.
+    */
+   private transient boolean dirty;
    
+   /**
+    * Between beginBatch() and commitBatch() adding or removing a component
+    * does not pass the invalidation on to the layers above. The batches can be
+    * nested, batch counts the open ones and batchChanged tells whether the
+    * content changed since the outermost one was begun.
+    */
+   private transient int batch;
+   private transient boolean batchChanged;
+
+   /**
+    * true if only the components near the visible part of the JViewport are
+    * placed, see setVirtualized(boolean).
+    *
+    * @serial
+    */
+   private boolean virtualized;
+
+   /**
+    * This is the viewport whose changes are tracked while virtualized, and
+    * the listener tracking them and the container.
+    */
+   private transient JViewport viewport;
+   private transient ViewportTracker viewportTracker;
+
+   /**
+    * true while a virtualized layout places components or lays them out.
+    * Placing a component invalidates it and all layouts above, but does not
+    * change the content sizes, see placeVisible().
+    */
+   private transient boolean placing;
+
    /**
     * This is a name for test mode.
     */
@@ -133,7 +189,11 @@ public class TotemLayout
     *           the container to be laid out
     * @param testname
     *           the name of the object in test mode
+    * @deprecated the test mode prints every layout pass to
+    *             <code>System.out</code>, use a <code>TOnionListener</code>
+    *             installed with <code>TOnionInstrumentation</code> instead
     */
+   @Deprecated
    public TotemLayout(Container self, String testname)
    {
       this(self, 0, testname , LayoutMode.TEST_TOTEM);
@@ -167,7 +227,11 @@ public class TotemLayout
     *           the name of the object in test mode
     * @exception IllegalArgumentException
     *               if the value of the vertical gap is less than zero.
+    * @deprecated the test mode prints every layout pass to
+    *             <code>System.out</code>, use a <code>TOnionListener</code>
+    *             installed with <code>TOnionInstrumentation</code> instead
     */
+   @Deprecated
    public TotemLayout(Container self, int vgap, String testname)
    {
       this(self, vgap, testname, LayoutMode.TEST_TOTEM);
@@ -218,6 +282,126 @@ public class TotemLayout
       this.vgap = vgap;
    }
 
+   /**
+    * Gets the way the available height is distributed among the components.
+    * 
+    * @return the distribution mode
+    * @since private
+    */
+   public DistributionMode getDistributionMode()
+   {
+      return engine.getDistributionMode();
+   }
+
+   /**
+    * Sets the way the available height is distributed among the components.
+    * The default is <code>DistributionMode.PROPORTIONAL</code>.
+    * 
+    * @param distributionMode
+    *           the distribution mode
+    * @exception IllegalArgumentException
+    *               if the distribution mode is null
+    * @since private
+    */
+   public void setDistributionMode(DistributionMode distributionMode)
+   {
+      engine.setDistributionMode(distributionMode);
+   }
+
+   /**
+    * Tells whether only the components near the visible part of the JViewport
+    * are placed.
+    * 
+    * @return true if the layout is virtualized
+    * @see #setVirtualized(boolean)
+    * @since private
+    */
+   public boolean isVirtualized()
+   {
+      return virtualized;
+   }
+
+   /**
+    * Virtualizes the layout, or turns it back to normal. This only matters if
+    * the container is the view of a JViewport, e.g. inside a JScrollPane.
+    * <p>
+    * A virtualized layout still distributes the available height among all
+    * components, but it only places the components that can be seen in the
+    * viewport or are less than half a viewport away from it. The others are
+    * parked with an empty size at their position, so Swing neither paints
+    * them nor lays out their content, but focus traversal and scrolling to
+    * them work as usual. When the view is scrolled further, the components
+    * that come near are placed and laid out and the ones left behind are
+    * parked again. Scrolling a form of thousands of rows and changing its width then
+    * lay out about as many rows as can be seen.
+    * <p>
+    * The components stay in the container, the parked ones are not removed.
+    * Their minimum and maximum sizes are remembered and queried again only
+    * when they change. Changing the height of the viewport distributes the
+    * height among all components again, this takes time linear in the number
+    * of components and moves the parked components, but none of them is laid
+    * out.
+    * 
+    * @param virtualized
+    *           true to place only the components near the visible part
+    * @since private
+    */
+   public void setVirtualized(boolean virtualized)
+   {
+      synchronized (self.getTreeLock())
+      {
+         this.virtualized = virtualized;
+         if (!virtualized)
+            track(null);
+      }
+   }
+
+   /**
+    * Finds the component at a y position in the container, as laid out for
+    * the current size of the container, or of its viewport inside a
+    * JViewport. The positions of the components are remembered with the
+    * distribution of the available height, so the component is found by a
+    * binary search instead of looking at all components. This also works for
+    * components a virtualized layout has not placed.
+    * 
+    * @param y
+    *           the y position
+    * @return the index of the component, -1 if the position is in a gap, in
+    *         the insets or outside of all components
+    * @see #getComponentOffset(int)
+    * @since private
+    */
+   public int getComponentIndexAt(int y)
+   {
+      synchronized (self.getTreeLock())
+      {
+         return engine.componentAt(self, vgap, y);
+      }
+   }
+
+   /**
+    * Determines the y position of a component, as laid out for the current
+    * size of the container, or of its viewport inside a JViewport. The
+    * height of component i is getComponentOffset(i + 1) - getComponentOffset(i)
+    * - vgap, so scrolling to a component needs no search.
+    * 
+    * @param index
+    *           the index of the component, the number of components for the
+    *           end of the last one
+    * @return the y position of the component
+    * @exception IllegalArgumentException
+    *               if there is no such component
+    * @see #getComponentIndexAt(int)
+    * @since private
+    */
+   public int getComponentOffset(int index)
+   {
+      synchronized (self.getTreeLock())
+      {
+         return engine.componentOffset(self, vgap, index);
+      }
+   }
+
    /**
     * Determines the preferred size of the container argument using this totem
     * layout.
@@ -245,7 +429,7 @@ public class TotemLayout
             else if (self.getParent() instanceof JViewport)
             {
                JViewport vp = (JViewport) self.getParent();
-               Insets insets = self.getInsets();
+               Insets insets = engine.getInsets(self);
                return new Dimension(vp.getWidth() - insets.left - insets.right,
                      vp.getHeight() - insets.top - insets.bottom);
             }
@@ -259,168 +443,7 @@ public class TotemLayout
          {
             return this.minimumLayoutSize(self);
          }
-
-         Insets insets = self.getInsets();
-         int w;
-         int h;
-
-         w = self.getWidth() - (insets.left + insets.right);
-         h = self.getHeight() - (insets.top + insets.bottom)
-               - vgap * (ncomponents - 1);
-
-         int wmin = 0;
-         int wmax = Integer.MAX_VALUE;
-         int hmintotal = 0;
-         int[] hmin = new int[ncomponents];
-         int[] hmax = new int[ncomponents];
-         for (int i = 0; i < ncomponents; i++)
-         {
-            Component comp = self.getComponent(i);
-            Dimension dmin;
-            Dimension dmax;
-            /*
-             * In case Component is Container with Layout instance of
-             * TrainLayout or TotemLayout the dimensions derived by content - if
-             * any - should override given Dimensions. Only when there is no
-             * content the given Dimensions should be used.
-             */
-            if (comp instanceof Container && (((Container) comp)
-                  .getLayout() instanceof TrainLayout
-                  || ((Container) comp).getLayout() instanceof TotemLayout
-                  || ((Container) comp).getLayout() instanceof BullsEyeLayout))
-            {
-               Dimension dminContent = ((LayoutManager2) ((Container) comp)
-                     .getLayout()).minimumLayoutSize((Container) comp);
-               if (dminContent != null)
-                  dmin = dminContent;
-               else
-                  dmin = comp.getMinimumSize();
-               Dimension dmaxContent = ((LayoutManager2) ((Container) comp)
-                     .getLayout()).maximumLayoutSize((Container) comp);
-               if (dmaxContent != null)
-                  dmax = dmaxContent;
-               else
-                  dmax = comp.getMaximumSize();
-            }
-            else
-            {
-               dmin = comp.getMinimumSize();
-               dmax = comp.getMaximumSize();
-            }
-            // MINIMUM
-            if (dmin != null)
-            {
-               if (dmin.width > wmin)
-                  wmin = dmin.width; // minwidth is maximized
-               hmin[i] = dmin.height;
-               hmintotal += dmin.height;
-            }
-            else // minimum was not set on innermost layer
-            {
-               hmin[i] = h / ncomponents;
-               hmintotal += h / ncomponents;
-            }
-            // MAXIMUM
-            if (dmax != null)
-            {
-               if (dmax.width < wmax)
-                  wmax = dmax.width; // maxwidth is minimized
-               hmax[i] = dmax.height;
-            }
-            else // maximum was not set on innermost layer
-            {
-               hmax[i] = h / ncomponents;
-            }
-         }
-         // width
-         if (wmin > wmax)
-         {
-            // error correction
-            wmax = wmin;
-         }
-
-         if (wmax != Integer.MAX_VALUE)
-         {
-            if (w <= wmin)
-               w = wmin;
-            else if (wmax < w)
-               w = wmax;
-            // else w = w;
-         }
-         else if (w < wmin)
-            w = wmin;
-         // else w = w;
-         //
-         // height
-         int[] hfinal = new int[ncomponents];
-         int hcompare = 0;
-         int[] hdifference = new int[ncomponents];
-         int hdifferencetotal = 0;
-         for (int i = 0; i < ncomponents; i++)
-         {
-            if (hmax[i] < hmin[i])
-            {
-               // error correction
-               hmax[i] = hmin[i];
-            }
-            // allocating available height according to minimum heights vs.
-            // hmintotal
-            hfinal[i] = (int) ((hmin[i] / (float) hmintotal) * h);
-            if (hmin[i] > hfinal[i])
-            {
-               hfinal[i] = hmin[i];
-            }
-            else if (hmax[i] < hfinal[i])
-            {
-               hfinal[i] = hmax[i];
-            }
-            hcompare += hfinal[i];
-            hdifference[i] = hmax[i] - hfinal[i];
-            hdifferencetotal += hdifference[i];
-         }
-         int hleftover = h - hcompare;
-         // dispensing possible hleftover according to hdifference vs.
-         // hdifferencetotal
-         if (hleftover > 0)
-         {
-            hcompare = 0;
-            for (int i = 0; i < ncomponents; i++)
-            {
-               hfinal[i] += (int) ((hdifference[i] / (float) hdifferencetotal)
-                     * hleftover);
-               if (hmax[i] < hfinal[i])
-               {
-                  hfinal[i] = hmax[i];
-               }
-               hcompare += hfinal[i];
-            }
-         }
-         hleftover = h - hcompare;
-         // dispensing possible hleftover from back to front
-         if (hleftover > 0)
-         {
-            for (int i = ncomponents - 1; i >= 0; i--)
-            {
-               int hdiff = hmax[i] - hfinal[i];
-               if (hdiff > 0 && hdiff < hleftover)
-               {
-                  hfinal[i] = hmax[i];
-                  hleftover -= hdiff;
-               }
-               else if (hdiff > 0)
-               {
-                  hfinal[i] += hleftover;
-                  break;
-               }
-            }
-         }
-
-         int hfinaltotal = insets.top;
-         for (int i = 0; i < ncomponents; i++)
-         {
-            hfinaltotal += hfinal[i] + vgap;
-         }
-         return new Dimension(hfinaltotal, w);
+         return engine.preferredLayoutSize(self, vgap);
       }
    }
 
@@ -448,59 +471,17 @@ public class TotemLayout
       synchronized (self.getTreeLock())
       {
          checkContainer(self);
-         if (dimMin != null)
-            return dimMin;
-         int ncomponents = self.getComponentCount();
-         if (ncomponents == 0)
-         {
-            dimMin = null;
-            return null;
-         }
-
-         Insets insets = self.getInsets();
-         int w = 0;
-         int h = 0;
-         for (int i = 0; i < ncomponents; i++)
-         {
-            Component comp = self.getComponent(i);
-            Dimension dmin;
-            /*
-             * In case Component is Container with Layout instance of
-             * TrainLayout or TotemLayout the dimensions derived by content - if
-             * any - should override given Dimensions. Only when there is no
-             * content the given Dimensions should be used.
-             */
-            if (comp instanceof Container && (((Container) comp)
-                  .getLayout() instanceof TrainLayout
-                  || ((Container) comp).getLayout() instanceof TotemLayout
-                  || ((Container) comp).getLayout() instanceof BullsEyeLayout))
-            {
-               Dimension dminContent = ((LayoutManager2) ((Container) comp)
-                     .getLayout()).minimumLayoutSize((Container) comp);
-               if (dminContent != null)
-                  dmin = dminContent;
-               else
-                  dmin = comp.getMinimumSize();
-            }
-            else
-            {
-               dmin = comp.getMinimumSize();
-            }
-            if (dmin != null)
-            {
-               if (w < dmin.width)
-                  w = dmin.width; // minwidth is maximized
-               h += dmin.height;
-            }
-            else
-            {
-               h += (self.getHeight() - (insets.top + insets.bottom))
-                     / ncomponents;
-            }
-         }
-
-         dimMin = new Dimension(insets.left + insets.right + w,
-               insets.top + insets.bottom + h + (ncomponents - 1) * vgap);
+         checkResized(self);
+         dirty = false;
+         TOnionListener listener = TOnionInstrumentation.getListener();
+         TOnionMeasurement m = listener == null ? null
+               : engine.startMeasurement(listener, Operation.MINIMUM_SIZE, self);
+         boolean cached = dimMin != null;
+         if (!cached)
+            dimMin = engine.minimumLayoutSize(self, vgap);
+         if (m != null)
+            engine.finishMeasurement(listener, Operation.MINIMUM_SIZE, self, m,
+                  cached);
          return dimMin;
       }
    }
@@ -530,58 +511,17 @@ public class TotemLayout
       synchronized (self.getTreeLock())
       {
          checkContainer(self);
-         if (dimMax != null)
-            return dimMax;
-         int ncomponents = self.getComponentCount();
-         if (ncomponents == 0)
-         {
-            dimMax = null;
-            return null;
-         }
-
-         Insets insets = self.getInsets();
-         int w = Integer.MAX_VALUE;
-         int h = 0;
-         for (int i = 0; i < ncomponents; i++)
-         {
-            Component comp = self.getComponent(i);
-            Dimension dmax;
-            /*
-             * In case Component is Container with Layout instance of
-             * TrainLayout or TotemLayout the dimensions derived by content - if
-             * any - should override given Dimensions. Only when there is no
-             * content the given Dimensions should be used.
-             */
-            if (comp instanceof Container && (((Container) comp)
-                  .getLayout() instanceof TrainLayout
-                  || ((Container) comp).getLayout() instanceof TotemLayout
-                  || ((Container) comp).getLayout() instanceof BullsEyeLayout))
-            {
-               Dimension dmaxContent = ((LayoutManager2) ((Container) comp)
-                     .getLayout()).maximumLayoutSize((Container) comp);
-               if (dmaxContent != null)
-                  dmax = dmaxContent;
-               else
-                  dmax = comp.getMaximumSize();
-            }
-            else
-            {
-               dmax = comp.getMaximumSize();
-            }
-            if (dmax != null)
-            {
-               if (w > dmax.width)
-                  w = dmax.width; // maxwidth is minimized
-               h += dmax.height;
-            }
-            else
-            {
-               h += (self.getHeight() - (insets.top + insets.bottom))
-                     / ncomponents;
-            }
-         }
-         dimMax = new Dimension(insets.left + insets.right + w,
-               insets.top + insets.bottom + h + (ncomponents - 1) * vgap);
+         checkResized(self);
+         dirty = false;
+         TOnionListener listener = TOnionInstrumentation.getListener();
+         TOnionMeasurement m = listener == null ? null
+               : engine.startMeasurement(listener, Operation.MAXIMUM_SIZE, self);
+         boolean cached = dimMax != null;
+         if (!cached)
+            dimMax = engine.maximumLayoutSize(self, vgap);
+         if (m != null)
+            engine.finishMeasurement(listener, Operation.MAXIMUM_SIZE, self, m,
+                  cached);
          return dimMax;
       }
    }
@@ -613,196 +553,54 @@ public class TotemLayout
       synchronized (self.getTreeLock())
       {
          checkContainer(self);
+         checkResized(self);
          int ncomponents = self.getComponentCount();
-         if (ncomponents == 0)
+         if (ncomponents == 0 || OnionLayoutEngine.isParked(self)
+               || TOnionClipping.defer(self))
             return;
 
-         Insets insets = self.getInsets();
-         int availableHeight;
-         int availableWidth;
-         if (self.getParent() instanceof JViewport)
+         TOnionListener listener = TOnionInstrumentation.getListener();
+         TOnionMeasurement m = listener == null ? null
+               : engine.startMeasurement(listener, Operation.LAYOUT, self);
+         OnionLayoutEngine.Distribution d;
+         if (virtualized && self.getParent() instanceof JViewport)
          {
-            JViewport vp = (JViewport) self.getParent();
-            availableWidth = vp.getWidth() - (insets.left + insets.right);
-            availableHeight = vp.getHeight() - (insets.top + insets.bottom)
-                  - vgap * (ncomponents - 1);
-         }
-         else
-         {
-            availableWidth = self.getWidth() - (insets.left + insets.right);
-            availableHeight = self.getHeight() - (insets.top + insets.bottom)
-                  - vgap * (ncomponents - 1);
-         }
-         
-         int h = availableHeight;
-         int w = availableWidth;
-         int wmin = 0;
-         int wmax = Integer.MAX_VALUE;
-         int hmintotal = 0;
-         int[] hmin = new int[ncomponents];
-         int[] hmax = new int[ncomponents];
-         for (int i = 0; i < ncomponents; i++)
-         {
-            Component comp = self.getComponent(i);
-            Dimension dmin;
-            Dimension dmax;
-            /*
-             * In case Component is Container with Layout instance of
-             * TrainLayout or TotemLayout the dimensions derived by content - if
-             * any - should override given Dimensions. Only when there is no
-             * content the given Dimensions should be used.
-             */
-            if (comp instanceof Container && (((Container) comp)
-                  .getLayout() instanceof TrainLayout
-                  || ((Container) comp).getLayout() instanceof TotemLayout
-                  || ((Container) comp).getLayout() instanceof BullsEyeLayout))
-            {
-               Dimension dminContent = ((LayoutManager2) ((Container) comp)
-                     .getLayout()).minimumLayoutSize((Container) comp);
-               if (dminContent != null)
-                  dmin = dminContent;
-               else
-                  dmin = comp.getMinimumSize();
-               Dimension dmaxContent = ((LayoutManager2) ((Container) comp)
-                     .getLayout()).maximumLayoutSize((Container) comp);
-               if (dmaxContent != null)
-                  dmax = dmaxContent;
-               else
-                  dmax = comp.getMaximumSize();
-            }
-            else
-            {
-               dmin = comp.getMinimumSize();
-               dmax = comp.getMaximumSize();
-            }
-            // MINIMUM
-            if (dmin != null)
+            track((JViewport) self.getParent());
+            boolean wasPlacing = placing;
+            placing = true;
+            try
             {
-               if (dmin.width > wmin)
-                  wmin = dmin.width; // minwidth is maximized
-               hmin[i] = dmin.height;
-               hmintotal += dmin.height;
+               d = engine.layoutVisible(self, vgap);
             }
-            else // minimum was not set on innermost layer
+            finally
             {
-               hmin[i] = h / ncomponents;
-               hmintotal += h / ncomponents;
+               placing = wasPlacing;
             }
-            // MAXIMUM
-            if (dmax != null)
-            {
-               if (dmax.width < wmax)
-                  wmax = dmax.width; // maxwidth is minimized
-               hmax[i] = dmax.height;
-            }
-            else
-            {
-               hmax[i] = h / ncomponents;
-            }
-         }
-         // width
-         if (wmin > wmax)
-         {
-            // error correction
-            wmax = wmin;
+            // the placed components are checked again, see placeVisible()
+            this.dimMin = null;
+            this.dimMax = null;
          }
-
-         if (wmax != Integer.MAX_VALUE)
-         {
-            if (w <= wmin)
-               w = wmin;
-            else if (wmax < w)
-               w = wmax;
-            // else w = w;
-         }
-         else if (w < wmin)
-            w = wmin;
-         // else w = w;
-
-         // height
-         int[] hfinal = new int[ncomponents];
-         int hcompare = 0;
-         int[] hdifference = new int[ncomponents];
-         int hdifferencetotal = 0;
-         for (int i = 0; i < ncomponents; i++)
-         {
-            if (hmax[i] < hmin[i])
-            {
-               // error correction
-               hmax[i] = hmin[i];
-            }
-            // allocating available height according to minimum heights vs.
-            // hmintotal
-            hfinal[i] = (int) ((hmin[i] / (float) hmintotal) * h);
-            if (hmin[i] > hfinal[i])
-            {
-               hfinal[i] = hmin[i];
-            }
-            else if (hmax[i] < hfinal[i])
-            {
-               hfinal[i] = hmax[i];
-            }
-            hcompare += hfinal[i];
-            hdifference[i] = hmax[i] - hfinal[i];
-            hdifferencetotal += hdifference[i];
-         }
-         int hleftover = h - hcompare;
-         // dispensing possible hleftover according to hdifference vs.
-         // hdifferencetotal
-         if (hleftover > 0)
-         {
-            hcompare = 0;
-            for (int i = 0; i < ncomponents; i++)
-            {
-               hfinal[i] += (int) ((hdifference[i] / (float) hdifferencetotal)
-                     * hleftover);
-               if (hmax[i] < hfinal[i])
-               {
-                  hfinal[i] = hmax[i];
-               }
-               hcompare += hfinal[i];
-            }
-         }
-         hleftover = h - hcompare;
-         // dispensing possible hleftover from back to front
-         if (hleftover > 0)
+         else
          {
-            for (int i = ncomponents - 1; i >= 0; i--)
-            {
-               int hdiff = hmax[i] - hfinal[i];
-               if (hdiff > 0 && hdiff < hleftover)
-               {
-                  hfinal[i] = hmax[i];
-                  hleftover -= hdiff;
-               }
-               else if (hdiff > 0)
-               {
-                  hfinal[i] += hleftover;
-                  break;
-               }
-            }
+            track(null);
+            d = engine.layoutContainer(self, vgap);
          }
+         if (m != null)
+            engine.finishMeasurement(listener, Operation.LAYOUT, self, m,
+                  false);
 
-         int y = insets.top;
-         for (int i = 0; i < ncomponents; i++)
-         {
-            Component comp = self.getComponent(i);
-            comp.setBounds(insets.left, y, w, hfinal[i]);
-            y += hfinal[i] + vgap;
-         }
-         
          if (LayoutMode.TEST_TOTEM == this.mode)
          {
             System.out.println("");
             System.out.println(testname + " with TotemLayout");
-            System.out.println("available width: " + availableWidth);
-            System.out.println("available height: " + availableHeight);
-            System.out.println("all components width: " + w);
-            System.out.println("all components min width: " + wmin);
-            System.out.println("all components max width: " + wmax);
+            System.out.println("available width: " + d.availableCross);
+            System.out.println("available height: " + d.availableMain);
+            System.out.println("all components width: " + d.cross);
+            System.out.println("all components min width: " + d.minCross);
+            System.out.println("all components max width: " + d.maxCross);
             for (int i = 0; i < ncomponents; i++)
             {               
-               System.out.println("component["+i+"] height: "+ hfinal[i]);
+               System.out.println("component["+i+"] height: "+ d.sizes[i]);
             }
             System.out.println("");           
          }        
@@ -810,8 +608,71 @@ public class TotemLayout
    }
 
    /**
-    * invalidates Layout, minimum and maximum sizes of content will be
-    * recalculated
+    * Starts tracking the changes of a viewport, and stops tracking the one
+    * tracked before. While a viewport is tracked, the container is tracked
+    * as well, tracking stops when it is removed from the viewport or no
+    * longer displayable.
+    *
+    * @param vp
+    *           the viewport, null to stop tracking
+    */
+   private void track(JViewport vp)
+   {
+      if (viewport == vp)
+         return;
+      if (viewport != null)
+      {
+         viewport.removeChangeListener(viewportTracker);
+         self.removeHierarchyListener(viewportTracker);
+      }
+      viewport = vp;
+      if (vp != null)
+      {
+         if (viewportTracker == null)
+            viewportTracker = new ViewportTracker();
+         vp.addChangeListener(viewportTracker);
+         self.addHierarchyListener(viewportTracker);
+      }
+   }
+
+   /**
+    * Places and lays out the components that were scrolled near the visible
+    * part of the viewport, unless the components placed before still cover
+    * it or the container is about to be laid out anyway.
+    * <p>
+    * Placing and laying out components invalidates their layouts and the
+    * layers in between, which must not discard the sizes remembered for the
+    * whole form. Instead the sizes of the placed components are checked again
+    * when they are needed next, which also makes the layers in between pass
+    * on invalidations again.
+    */
+   private void placeVisible()
+   {
+      synchronized (self.getTreeLock())
+      {
+         if (!virtualized || self.getParent() != viewport || !self.isValid()
+               || self.getComponentCount() == 0
+               || engine.coversVisible(self))
+            return;
+         placing = true;
+         try
+         {
+            layoutContainer(self);
+            self.validate();
+         }
+         finally
+         {
+            placing = false;
+         }
+         engine.markPlacedPending();
+         this.dimMin = null;
+         this.dimMax = null;
+      }
+   }
+
+   /**
+    * minimum and maximum sizes of content will be recalculated, only the sizes
+    * of the added or removed component are queried again
     * 
     * @param name
     *           the name of the component
@@ -821,12 +682,15 @@ public class TotemLayout
    @Override
    public void addLayoutComponent(String name, Component comp)
    {
-      invalidateLayout(comp.getParent());
+      Container self = comp.getParent();
+      checkContainer(self);
+      this.engine.componentAdded(self, comp);
+      discardContentSize(self);
    }
 
    /**
-    * invalidates Layout, minimum and maximum sizes of content will be
-    * recalculated
+    * minimum and maximum sizes of content will be recalculated, only the sizes
+    * of the added or removed component are queried again
     *
     * @param name
     *           the name of the component
@@ -836,12 +700,15 @@ public class TotemLayout
    @Override
    public void addLayoutComponent(Component comp, Object constraints)
    {
-      invalidateLayout(comp.getParent());
+      Container self = comp.getParent();
+      checkContainer(self);
+      this.engine.componentAdded(self, comp);
+      discardContentSize(self);
    }
 
    /**
-    * invalidates Layout, minimum and maximum sizes of content will be
-    * recalculated
+    * minimum and maximum sizes of content will be recalculated, only the sizes
+    * of the added or removed component are queried again
     * 
     * @param comp
     *           the component to be removed
@@ -849,26 +716,104 @@ public class TotemLayout
    @Override
    public void removeLayoutComponent(Component comp)
    {
-      invalidateLayout(comp.getParent());
+      Container self = comp.getParent();
+      checkContainer(self);
+      this.engine.componentRemoved(self, comp);
+      discardContentSize(self);
+   }
+
+   /**
+    * Begins a batch of changes to the container. Until the batch is committed,
+    * adding or removing components does not invalidate the TOnion layers
+    * above, so building a long form does not walk up the layers once for
+    * every component. The layers above must not be laid out before the batch
+    * is committed.
+    * <p>
+    * Batches can be nested, only committing the outermost batch invalidates
+    * the layers above.
+    * 
+    * @see #commitBatch()
+    * @since private
+    */
+   public void beginBatch()
+   {
+      synchronized (self.getTreeLock())
+      {
+         batch++;
+      }
+   }
+
+   /**
+    * Commits a batch of changes begun with <code>beginBatch()</code>. If the
+    * content changed during the batch, the layers above are invalidated once.
+    * 
+    * @exception IllegalStateException
+    *               if no batch was begun
+    * @see #beginBatch()
+    * @since private
+    */
+   public void commitBatch()
+   {
+      synchronized (self.getTreeLock())
+      {
+         if (batch == 0)
+            throw new IllegalStateException("no batch was begun");
+         batch--;
+         if (batch == 0 && batchChanged)
+         {
+            batchChanged = false;
+            discardContentSize(self);
+         }
+      }
    }
 
    /**
     * Invalidates the layout, indicating that if the layout manager has cached
-    * information it should be discarded.
+    * information it should be discarded. Resizing the container alone
+    * invalidates it as well, then the remembered sizes are kept.
     */
    @Override
    public void invalidateLayout(Container self)
    {
       checkContainer(self);
+      if (placing || engine.isResize(self))
+         return;
+      this.engine.invalidate();
+      discardContentSize(self);
+   }
+
+   /**
+    * Discards the minimum and maximum size of the content if a component
+    * became invalid while the container was resized, see
+    * OnionLayoutEngine.isResize(Container).
+    */
+   private void checkResized(Container self)
+   {
+      if (engine.checkResized(self))
+         discardContentSize(self);
+   }
+
+   /**
+    * Discards the minimum and maximum size of the content and passes the
+    * invalidation on to the layer above, unless a batch is open or the layer
+    * above is still dirty.
+    */
+   private void discardContentSize(Container self)
+   {
       this.dimMin = null;
       this.dimMax = null;
-      if (self.getParent() != null && self.getParent().getLayout() != null
-            && (self.getParent().getLayout() instanceof TrainLayout
-                  || self.getParent().getLayout() instanceof TotemLayout))
+      TOnionListener listener = TOnionInstrumentation.getListener();
+      if (listener != null)
+         listener.invalidated(self);
+      if (batch > 0)
       {
-         ((LayoutManager2) self.getParent().getLayout())
-               .invalidateLayout(self.getParent());
+         batchChanged = true;
+         return;
       }
+      if (dirty)
+         return;
+      dirty = true;
+      OnionLayoutEngine.invalidateParent(self);
    }
 
    /**
@@ -895,6 +840,26 @@ public class TotemLayout
       return 0;
    }
 
+   /**
+    * Returns the engine, for TOnionSnapshot.
+    */
+   OnionLayoutEngine getEngine()
+   {
+      return engine;
+   }
+
+   /**
+    * Restores the minimum and maximum size of the content from a
+    * TOnionSnapshot. The layers above have been restored as well, so they
+    * are not dirty.
+    */
+   void restoreContentSize(Dimension min, Dimension max)
+   {
+      this.dimMin = min;
+      this.dimMax = max;
+      this.dirty = false;
+   }
+
    private void checkContainer(Container self)
    {
       if (this.self != self)
@@ -902,4 +867,31 @@ public class TotemLayout
          throw new AWTError("TotemLayout can't be shared");
       }
    }
+
+   /**
+    * Places the components scrolled near the visible part of the tracked
+    * viewport, and stops tracking it when the container leaves it.
+    */
+   private final class ViewportTracker
+         implements ChangeListener, HierarchyListener
+   {
+      @Override
+      public void stateChanged(ChangeEvent e)
+      {
+         placeVisible();
+      }
+
+      @Override
+      public void hierarchyChanged(HierarchyEvent e)
+      {
+         if ((e.getChangeFlags() & (HierarchyEvent.PARENT_CHANGED
+               | HierarchyEvent.DISPLAYABILITY_CHANGED)) == 0)
+            return;
+         synchronized (self.getTreeLock())
+         {
+            if (self.getParent() != viewport || !self.isDisplayable())
+               track(null);
+         }
+      }
+   }
 }
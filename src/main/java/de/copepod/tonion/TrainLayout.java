@@ -17,6 +17,8 @@ import java.awt.LayoutManager2;
 
 import javax.swing.JViewport;
 
+import de.copepod.tonion.TOnionListener.Operation;
+
 /**
  * The <code>TrainLayout</code> class is a layout manager that lays out a
  * container's components in one row from left to right.
@@ -35,9 +37,11 @@ import javax.swing.JViewport;
  * Even though TOnionLayout is done top-down each layer inquires about the
  * minimum and maximum sizes of all its components. To acquire a good
  * performance each layer caches the overall minimum and maximum size of its
- * components. Therefore TrainLayout can not be shared. Adding or removing a
+ * components as well as the minimum and maximum size of each component.
+ * Therefore TrainLayout can not be shared. Adding or removing a
  * component invalidates the cache of the layout and all TOnion layouts above
- * it.
+ * it. Components added between <code>beginBatch()</code> and
+ * <code>commitBatch()</code> invalidate the layouts above only once.
  * <p>
  * All first components inside a TOnionLayout must have a minimum and maximum
  * size set for the layout to function properly, otherwise minimum and maximum
@@ -62,7 +66,8 @@ import javax.swing.JViewport;
  * @version TrainLayout 3.0 (released 20. July 2020)
  */
 public class TrainLayout
-      implements LayoutManager, LayoutManager2, java.io.Serializable
+      implements LayoutManager, LayoutManager2, TOnionLayer,
+      java.io.Serializable
 {
    /*
     * serialVersionUID
@@ -98,11 +103,34 @@ public class TrainLayout
     */
    private Dimension dimMax;
 
+   /**
+    * TrainLayout leaves the work to an engine, which also remembers the
+    * minimum and maximum size of each component and the last distributions of
+    * the available width.
+    */
+   private final OnionLayoutEngine engine = new OnionLayoutEngine(false);
+
    /**
     * This is the container TrainLayout is assigned to.
     */
    private Container self;
+
+   /**
+    * true if the layers above were invalidated and the content sizes were not
+    * asked for since. Further invalidations need not be passed on then, the
+    * layers above are still dirty.
+    */
+   private transient boolean dirty;
    
+   /**
+    * Between beginBatch() and commitBatch() adding or removing a component
+    * does not pass the invalidation on to the layers above. The batches can be
+    * nested, batch counts the open ones and batchChanged tells whether the
+    * content changed since the outermost one was begun.
+    */
+   private transient int batch;
+   private transient boolean batchChanged;
+
    /**
     * This is a name for test mode.
     */
@@ -133,7 +161,11 @@ public class TrainLayout
     *           the container to be laid out
     * @param testname
     *           the name of the object in test mode
+    * @deprecated the test mode prints every layout pass to
+    *             <code>System.out</code>, use a <code>TOnionListener</code>
+    *             installed with <code>TOnionInstrumentation</code> instead
     */
+   @Deprecated
    public TrainLayout(Container self, String testname)
    {
       this(self, 0, testname, LayoutMode.TEST_TRAIN);
@@ -167,7 +199,11 @@ public class TrainLayout
     *           the name of the object in test mode
     * @exception IllegalArgumentException
     *               if the value of the horizontal gap is less than zero.
+    * @deprecated the test mode prints every layout pass to
+    *             <code>System.out</code>, use a <code>TOnionListener</code>
+    *             installed with <code>TOnionInstrumentation</code> instead
     */
+   @Deprecated
    public TrainLayout(Container self, int hgap, String testname)
    {
       this(self, hgap, testname, LayoutMode.TEST_TRAIN);
@@ -218,6 +254,78 @@ public class TrainLayout
       this.hgap = hgap;
    }
 
+   /**
+    * Gets the way the available width is distributed among the components.
+    * 
+    * @return the distribution mode
+    * @since private
+    */
+   public DistributionMode getDistributionMode()
+   {
+      return engine.getDistributionMode();
+   }
+
+   /**
+    * Sets the way the available width is distributed among the components.
+    * The default is <code>DistributionMode.PROPORTIONAL</code>.
+    * 
+    * @param distributionMode
+    *           the distribution mode
+    * @exception IllegalArgumentException
+    *               if the distribution mode is null
+    * @since private
+    */
+   public void setDistributionMode(DistributionMode distributionMode)
+   {
+      engine.setDistributionMode(distributionMode);
+   }
+
+   /**
+    * Finds the component at a x position in the container, as laid out for
+    * the current size of the container, or of its viewport inside a
+    * JViewport. The positions of the components are remembered with the
+    * distribution of the available width, so the component is found by a
+    * binary search instead of looking at all components. This also works for
+    * components a virtualized layout has not placed.
+    * 
+    * @param x
+    *           the x position
+    * @return the index of the component, -1 if the position is in a gap, in
+    *         the insets or outside of all components
+    * @see #getComponentOffset(int)
+    * @since private
+    */
+   public int getComponentIndexAt(int x)
+   {
+      synchronized (self.getTreeLock())
+      {
+         return engine.componentAt(self, hgap, x);
+      }
+   }
+
+   /**
+    * Determines the x position of a component, as laid out for the current
+    * size of the container, or of its viewport inside a JViewport. The
+    * width of component i is getComponentOffset(i + 1) - getComponentOffset(i)
+    * - hgap, so scrolling to a component needs no search.
+    * 
+    * @param index
+    *           the index of the component, the number of components for the
+    *           end of the last one
+    * @return the x position of the component
+    * @exception IllegalArgumentException
+    *               if there is no such component
+    * @see #getComponentIndexAt(int)
+    * @since private
+    */
+   public int getComponentOffset(int index)
+   {
+      synchronized (self.getTreeLock())
+      {
+         return engine.componentOffset(self, hgap, index);
+      }
+   }
+
    /**
     * Determines the preferred size of the container argument using this train
     * layout.
@@ -245,7 +353,7 @@ public class TrainLayout
             else if (self.getParent() instanceof JViewport)
             {
                JViewport vp = (JViewport) self.getParent();
-               Insets insets = self.getInsets();
+               Insets insets = engine.getInsets(self);
                return new Dimension(vp.getWidth() - insets.left - insets.right,
                      vp.getHeight() - insets.top - insets.bottom);
             }
@@ -259,173 +367,7 @@ public class TrainLayout
          {
             return this.minimumLayoutSize(self);
          }
-
-         Insets insets = self.getInsets();
-         int w;
-         int h;
-
-         h = self.getHeight() - (insets.top + insets.bottom);
-         w = self.getWidth() - (insets.left + insets.right)
-               - hgap * (ncomponents - 1);
-
-         int hmin = 0;
-         int hmax = Integer.MAX_VALUE;
-         int wmintotal = 0;
-         int[] wmin = new int[ncomponents];
-         int[] wmax = new int[ncomponents];
-         for (int i = 0; i < ncomponents; i++)
-         {
-            Component comp = self.getComponent(i);
-            Dimension dmin;
-            Dimension dmax;
-            /*
-             * In case Component is Container with Layout instance of
-             * TrainLayout or TotemLayout the dimensions derived by content - if
-             * any - should override given Dimensions. Only when there is no
-             * content the given Dimensions should be used.
-             */
-            if (comp instanceof Container && (((Container) comp)
-                  .getLayout() instanceof TotemLayout
-                  || ((Container) comp).getLayout() instanceof TrainLayout
-                  || ((Container) comp).getLayout() instanceof BullsEyeLayout))
-            {
-               Dimension dminContent = ((LayoutManager2) ((Container) comp)
-                     .getLayout()).minimumLayoutSize((Container) comp);
-               if (dminContent != null)
-                  dmin = dminContent;
-               else
-                  dmin = comp.getMinimumSize();
-               Dimension dmaxContent = ((LayoutManager2) ((Container) comp)
-                     .getLayout()).maximumLayoutSize((Container) comp);
-               if (dmaxContent != null)
-                  dmax = dmaxContent;
-               else
-                  dmax = comp.getMaximumSize();
-            }
-            else
-            {
-               dmin = comp.getMinimumSize();
-               dmax = comp.getMaximumSize();
-            }
-
-            // MINIMUM
-            if (dmin != null)
-            {
-               if (dmin.height > hmin)
-                  hmin = dmin.height; // minheight is maximized
-               wmin[i] = dmin.width;
-               wmintotal += dmin.width;
-            }
-            else // minimum was not set on innermost layer
-            {
-               wmin[i] = w / ncomponents;
-               wmintotal += w / ncomponents;
-            }
-            // MAXIMUM
-            if (dmax != null)
-            {
-
-               if (dmax.height < hmax)
-                  hmax = dmax.height; // maxheight is minimized
-               wmax[i] = dmax.width;
-            }
-            else // maximum was not set on innermost layer
-            {
-               wmax[i] = w / ncomponents;
-            }
-         }
-
-         // height
-         if (hmin > hmax)
-         {
-            // error correction, to show error use TrainLayoutTest or toString()
-            hmax = hmin;
-         }
-         
-         if (hmax != Integer.MAX_VALUE)
-         {
-            if (h <= hmin)
-               h = hmin;
-            else if (hmax < h)
-               h = hmax;
-            // else h = h;
-         }
-         else if (h < hmin)
-            h = hmin;
-         // else h = h;
-         //
-         // width
-         int[] wfinal = new int[ncomponents];
-         int wcompare = 0;
-         int[] wdifference = new int[ncomponents];
-         int wdifferencetotal = 0;
-         for (int i = 0; i < ncomponents; i++)
-         {
-            if (wmax[i] < wmin[i])
-            {
-               // error correction, to show error use TrainLayoutTest or
-               // toString
-               wmax[i] = wmin[i];
-            }
-            // allocating available width according to minimum widths vs.
-            // wmintotal
-            wfinal[i] = (int) ((wmin[i] / (float) wmintotal) * w);
-            if (wmin[i] > wfinal[i])
-            {
-               wfinal[i] = wmin[i];
-            }
-            else if (wmax[i] < wfinal[i])
-            {
-               wfinal[i] = wmax[i];
-            }
-            wcompare += wfinal[i];
-            wdifference[i] = wmax[i] - wfinal[i];
-            wdifferencetotal += wdifference[i];
-         }
-         int wleftover = w - wcompare;
-         // dispensing possible wleftover according to wdifference vs.
-         // wdifferencetotal
-         if (wleftover > 0)
-         {
-            wcompare = 0;
-            for (int i = 0; i < ncomponents; i++)
-            {
-               wfinal[i] += (int) ((wdifference[i] / (float) wdifferencetotal)
-                     * wleftover);
-               if (wmax[i] < wfinal[i])
-               {
-                  wfinal[i] = wmax[i];
-               }
-               wcompare += wfinal[i];
-            }
-         }
-         wleftover = w - wcompare;
-         // dispensing possible wleftover from back to front
-         if (wleftover > 0)
-         {
-            for (int i = ncomponents - 1; i >= 0; i--)
-            {
-               int wdiff = wmax[i] - wfinal[i];
-               if (wdiff > 0 && wdiff < wleftover)
-               {
-                  wfinal[i] = wmax[i];
-                  wleftover -= wdiff;
-               }
-               else if (wdiff > 0)
-               {
-                  wfinal[i] += wleftover;
-                  break;
-               }
-            }
-         }
-
-         int wfinaltotal = insets.left;
-         for (int i = 0; i < ncomponents; i++)
-         {
-            wfinaltotal += wfinal[i] + hgap;
-         }
-
-         return new Dimension(wfinaltotal, h);
+         return engine.preferredLayoutSize(self, hgap);
       }
    }
 
@@ -453,63 +395,18 @@ public class TrainLayout
       synchronized (self.getTreeLock())
       {
          checkContainer(self);
-         if (dimMin != null)
-            return dimMin;
-         int ncomponents = self.getComponentCount();
-         if (ncomponents == 0)
-         {
-            dimMin = null;
-            return null;
-         }
-
-         Insets insets = self.getInsets();
-         int h = 0;
-         int w = 0;
-         for (int i = 0; i < ncomponents; i++)
-         {
-            Component comp = self.getComponent(i);
-            Dimension dmin;
-            /*
-             * In case Component is Container with Layout instance of
-             * TrainLayout or TotemLayout the dimensions derived by content - if
-             * any - should override given Dimensions. Only when there is no
-             * content the given Dimensions should be used.
-             */
-            if (comp instanceof Container && (((Container) comp)
-                  .getLayout() instanceof TotemLayout
-                  || ((Container) comp).getLayout() instanceof TrainLayout
-                  || ((Container) comp).getLayout() instanceof BullsEyeLayout))
-            {
-               Dimension dminContent = ((LayoutManager2) ((Container) comp)
-                     .getLayout()).minimumLayoutSize((Container) comp);
-               if (dminContent != null)
-                  dmin = dminContent;
-               else
-                  dmin = comp.getMinimumSize();
-            }
-            else
-            {
-               dmin = comp.getMinimumSize();
-            }
-            
-            if (dmin != null)
-            {
-               if (h < dmin.height)
-                  h = dmin.height; // minheight is maximized
-               w += dmin.width;
-            }
-            else
-            {
-               w += (self.getWidth() - (insets.left + insets.right))
-                     / ncomponents;
-            }
-         }
-
-         dimMin = new Dimension(
-               insets.left + insets.right + w + (ncomponents - 1) * hgap,
-               insets.top + insets.bottom + h);
+         checkResized(self);
+         dirty = false;
+         TOnionListener listener = TOnionInstrumentation.getListener();
+         TOnionMeasurement m = listener == null ? null
+               : engine.startMeasurement(listener, Operation.MINIMUM_SIZE, self);
+         boolean cached = dimMin != null;
+         if (!cached)
+            dimMin = engine.minimumLayoutSize(self, hgap);
+         if (m != null)
+            engine.finishMeasurement(listener, Operation.MINIMUM_SIZE, self, m,
+                  cached);
          return dimMin;
-
       }
    }
 
@@ -538,59 +435,17 @@ public class TrainLayout
       synchronized (self.getTreeLock())
       {
          checkContainer(self);
-         if (dimMax != null)
-            return dimMax;
-         int ncomponents = self.getComponentCount();
-         if (ncomponents == 0)
-         {
-            dimMax = null;
-            return null;
-         }
-
-         Insets insets = self.getInsets();
-         int h = Integer.MAX_VALUE;
-         int w = 0;
-         for (int i = 0; i < ncomponents; i++)
-         {
-            Component comp = self.getComponent(i);
-            Dimension dmax;
-            /*
-             * In case Component is Container with Layout instance of
-             * TrainLayout or TotemLayout the dimensions derived by content - if
-             * any - should override given Dimensions. Only when there is no
-             * content the given Dimensions should be used.
-             */
-            if (comp instanceof Container && (((Container) comp)
-                  .getLayout() instanceof TotemLayout
-                  || ((Container) comp).getLayout() instanceof TrainLayout
-                  || ((Container) comp).getLayout() instanceof BullsEyeLayout))
-            {
-               Dimension dmaxContent = ((LayoutManager2) ((Container) comp)
-                     .getLayout()).maximumLayoutSize((Container) comp);
-               if (dmaxContent != null)
-                  dmax = dmaxContent;
-               else
-                  dmax = comp.getMaximumSize();
-            }
-            else
-            {
-               dmax = comp.getMaximumSize();
-            }
-            if (dmax != null)
-            {
-               if (h > dmax.height)
-                  h = dmax.height; // maxheight is minimized
-               w += dmax.width;
-            }
-            else
-            {
-               w += (self.getWidth() - (insets.left + insets.right))
-                     / ncomponents;
-            }
-         }
-         dimMax = new Dimension(
-               insets.left + insets.right + w + (ncomponents - 1) * hgap,
-               insets.top + insets.bottom + h);
+         checkResized(self);
+         dirty = false;
+         TOnionListener listener = TOnionInstrumentation.getListener();
+         TOnionMeasurement m = listener == null ? null
+               : engine.startMeasurement(listener, Operation.MAXIMUM_SIZE, self);
+         boolean cached = dimMax != null;
+         if (!cached)
+            dimMax = engine.maximumLayoutSize(self, hgap);
+         if (m != null)
+            engine.finishMeasurement(listener, Operation.MAXIMUM_SIZE, self, m,
+                  cached);
          return dimMax;
       }
    }
@@ -622,199 +477,33 @@ public class TrainLayout
       synchronized (self.getTreeLock())
       {
          checkContainer(self);
+         checkResized(self);
          int ncomponents = self.getComponentCount();
-         if (ncomponents == 0)
+         if (ncomponents == 0 || OnionLayoutEngine.isParked(self)
+               || TOnionClipping.defer(self))
             return;
 
-         Insets insets = self.getInsets();
-         int availableHeight;
-         int availableWidth;
-         if (self.getParent() instanceof JViewport)
-         {
-            JViewport vp = (JViewport) self.getParent();
-            availableHeight = vp.getHeight() - (insets.top + insets.bottom);
-            availableWidth = vp.getWidth() - (insets.left + insets.right)
-                  - hgap * (ncomponents - 1);
-         }
-         else
-         {
-            availableHeight = self.getHeight() - (insets.top + insets.bottom);
-            availableWidth = self.getWidth() - (insets.left + insets.right)
-                  - hgap * (ncomponents - 1);
-         }
-         
-         int h = availableHeight;
-         int w = availableWidth;
-         int hmin = 0;
-         int hmax = Integer.MAX_VALUE;
-         int wmintotal = 0;
-         int[] wmin = new int[ncomponents];
-         int[] wmax = new int[ncomponents];
-         for (int i = 0; i < ncomponents; i++)
-         {
-            Component comp = self.getComponent(i);
-            Dimension dmin;
-            Dimension dmax;
-            /*
-             * In case Component is Container with Layout instance of
-             * TrainLayout or TotemLayout the dimensions derived by content - if
-             * any - should override given Dimensions. Only when there is no
-             * content the given Dimensions should be used.
-             */
-            if (comp instanceof Container && (((Container) comp)
-                  .getLayout() instanceof TotemLayout
-                  || ((Container) comp).getLayout() instanceof TrainLayout
-                  || ((Container) comp).getLayout() instanceof BullsEyeLayout))
-            {
-               Dimension dminContent = ((LayoutManager2) ((Container) comp)
-                     .getLayout()).minimumLayoutSize((Container) comp);
-               if (dminContent != null)
-                  dmin = dminContent;
-               else
-                  dmin = comp.getMinimumSize();
-               Dimension dmaxContent = ((LayoutManager2) ((Container) comp)
-                     .getLayout()).maximumLayoutSize((Container) comp);
-               if (dmaxContent != null)
-                  dmax = dmaxContent;
-               else
-                  dmax = comp.getMaximumSize();
-            }
-            else
-            {
-               dmin = comp.getMinimumSize();
-               dmax = comp.getMaximumSize();
-            }
-
-            // MINIMUM
-            if (dmin != null)
-            {
-               if (dmin.height > hmin)
-                  hmin = dmin.height; // minheight is maximized
-               wmin[i] = dmin.width;
-               wmintotal += dmin.width;
-            }
-            else // minimum was not set on innermost layer
-            {
-               wmin[i] = w / ncomponents;
-               wmintotal += w / ncomponents;
-            }
-            // MAXIMUM
-            if (dmax != null)
-            {
-               if (dmax.height < hmax)
-                  hmax = dmax.height; // maxheight is minimized
-               wmax[i] = dmax.width;
-            }
-            else // maximum was not set on innermost layer
-            {
-               wmax[i] = w / ncomponents;
-            }
-         }
-
-         // height
-         if (hmin > hmax)
-         {
-            // error correction, to show error use TrainLayoutTest or toString()
-            hmax = hmin;
-         }
-         
-         if (hmax != Integer.MAX_VALUE)
-         {
-            if (h <= hmin)
-               h = hmin;
-            else if (hmax < h)
-               h = hmax;
-            // else h = h;
-         }
-         else if (h < hmin)
-            h = hmin;
-         // else h = h;
-         
-         // width
-         int[] wfinal = new int[ncomponents];
-         int wcompare = 0;
-         int[] wdifference = new int[ncomponents];
-         int wdifferencetotal = 0;
-         for (int i = 0; i < ncomponents; i++)
-         {
-            if (wmax[i] < wmin[i])
-            {
-               // error correction, to show error use TrainLayoutTest or
-               // toString()
-               wmax[i] = wmin[i];
-            }
-            // allocating available width according to minimum widths vs.
-            // wmintotal
-            wfinal[i] = (int) ((wmin[i] / (float) wmintotal) * w);
-            if (wmin[i] > wfinal[i])
-            {
-               wfinal[i] = wmin[i];
-            }
-            else if (wmax[i] < wfinal[i])
-            {
-               wfinal[i] = wmax[i];
-            }
-            wcompare += wfinal[i];
-            wdifference[i] = wmax[i] - wfinal[i];
-            wdifferencetotal += wdifference[i];
-         }
-         int wleftover = w - wcompare;
-         // dispensing possible wleftover according to wdifference vs.
-         // wdifferencetotal
-         if (wleftover > 0)
-         {
-            wcompare = 0;
-            for (int i = 0; i < ncomponents; i++)
-            {
-               wfinal[i] += (int) ((wdifference[i] / (float) wdifferencetotal)
-                     * wleftover);
-               if (wmax[i] < wfinal[i])
-               {
-                  wfinal[i] = wmax[i];
-               }
-               wcompare += wfinal[i];
-            }
-         }
-         wleftover = w - wcompare;
-         // dispensing possible wleftover from back to front
-         if (wleftover > 0)
-         {
-            for (int i = ncomponents - 1; i >= 0; i--)
-            {
-               int wdiff = wmax[i] - wfinal[i];
-               if (wdiff > 0 && wdiff < wleftover)
-               {
-                  wfinal[i] = wmax[i];
-                  wleftover -= wdiff;
-               }
-               else if (wdiff > 0)
-               {
-                  wfinal[i] += wleftover;
-                  break;
-               }
-            }
-         }
+         TOnionListener listener = TOnionInstrumentation.getListener();
+         TOnionMeasurement m = listener == null ? null
+               : engine.startMeasurement(listener, Operation.LAYOUT, self);
+         OnionLayoutEngine.Distribution d = engine.layoutContainer(self,
+               hgap);
+         if (m != null)
+            engine.finishMeasurement(listener, Operation.LAYOUT, self, m,
+                  false);
 
-         int x = insets.left;
-         for (int i = 0; i < ncomponents; i++)
-         {
-            Component comp = self.getComponent(i);
-            comp.setBounds(x, insets.top, wfinal[i], h);
-            x += wfinal[i] + hgap;
-         }
-         
          if (LayoutMode.TEST_TRAIN == this.mode)
          {
             System.out.println("");
             System.out.println(testname + " with TrainLayout");
-            System.out.println("available width: " + availableWidth);
-            System.out.println("available height: " + availableHeight);
-            System.out.println("all components height: " + h);
-            System.out.println("all components min height: " + hmin);
-            System.out.println("all components max height: " + hmax);
+            System.out.println("available width: " + d.availableMain);
+            System.out.println("available height: " + d.availableCross);
+            System.out.println("all components height: " + d.cross);
+            System.out.println("all components min height: " + d.minCross);
+            System.out.println("all components max height: " + d.maxCross);
             for (int i = 0; i < ncomponents; i++)
             {               
-               System.out.println("component["+i+"] width: "+ wfinal[i]);
+               System.out.println("component["+i+"] width: "+ d.sizes[i]);
             }
             System.out.println("");           
          }        
@@ -822,8 +511,8 @@ public class TrainLayout
    }
 
    /**
-    * invalidates Layout, minimum and maximum sizes of content will be
-    * recalculated
+    * minimum and maximum sizes of content will be recalculated, only the sizes
+    * of the added or removed component are queried again
     * 
     * @param name
     *           the name of the component
@@ -833,12 +522,15 @@ public class TrainLayout
    @Override
    public void addLayoutComponent(String name, Component comp)
    {
-      invalidateLayout(comp.getParent());
+      Container self = comp.getParent();
+      checkContainer(self);
+      this.engine.componentAdded(self, comp);
+      discardContentSize(self);
    }
 
    /**
-    * invalidates Layout, minimum and maximum sizes of content will be
-    * recalculated
+    * minimum and maximum sizes of content will be recalculated, only the sizes
+    * of the added or removed component are queried again
     *
     * @param name
     *           the name of the component
@@ -848,12 +540,15 @@ public class TrainLayout
    @Override
    public void addLayoutComponent(Component comp, Object constraints)
    {
-      invalidateLayout(comp.getParent());
+      Container self = comp.getParent();
+      checkContainer(self);
+      this.engine.componentAdded(self, comp);
+      discardContentSize(self);
    }
 
    /**
-    * invalidates Layout, minimum and maximum sizes of content will be
-    * recalculated
+    * minimum and maximum sizes of content will be recalculated, only the sizes
+    * of the added or removed component are queried again
     * 
     * @param comp
     *           the component to be removed
@@ -861,26 +556,104 @@ public class TrainLayout
    @Override
    public void removeLayoutComponent(Component comp)
    {
-      invalidateLayout(comp.getParent());
+      Container self = comp.getParent();
+      checkContainer(self);
+      this.engine.componentRemoved(self, comp);
+      discardContentSize(self);
+   }
+
+   /**
+    * Begins a batch of changes to the container. Until the batch is committed,
+    * adding or removing components does not invalidate the TOnion layers
+    * above, so building a long form does not walk up the layers once for
+    * every component. The layers above must not be laid out before the batch
+    * is committed.
+    * <p>
+    * Batches can be nested, only committing the outermost batch invalidates
+    * the layers above.
+    * 
+    * @see #commitBatch()
+    * @since private
+    */
+   public void beginBatch()
+   {
+      synchronized (self.getTreeLock())
+      {
+         batch++;
+      }
+   }
+
+   /**
+    * Commits a batch of changes begun with <code>beginBatch()</code>. If the
+    * content changed during the batch, the layers above are invalidated once.
+    * 
+    * @exception IllegalStateException
+    *               if no batch was begun
+    * @see #beginBatch()
+    * @since private
+    */
+   public void commitBatch()
+   {
+      synchronized (self.getTreeLock())
+      {
+         if (batch == 0)
+            throw new IllegalStateException("no batch was begun");
+         batch--;
+         if (batch == 0 && batchChanged)
+         {
+            batchChanged = false;
+            discardContentSize(self);
+         }
+      }
    }
 
    /**
     * Invalidates the layout, indicating that if the layout manager has cached
-    * information it should be discarded.
+    * information it should be discarded. Resizing the container alone
+    * invalidates it as well, then the remembered sizes are kept.
     */
    @Override
    public void invalidateLayout(Container self)
    {
       checkContainer(self);
+      if (engine.isResize(self))
+         return;
+      this.engine.invalidate();
+      discardContentSize(self);
+   }
+
+   /**
+    * Discards the minimum and maximum size of the content if a component
+    * became invalid while the container was resized, see
+    * OnionLayoutEngine.isResize(Container).
+    */
+   private void checkResized(Container self)
+   {
+      if (engine.checkResized(self))
+         discardContentSize(self);
+   }
+
+   /**
+    * Discards the minimum and maximum size of the content and passes the
+    * invalidation on to the layer above, unless a batch is open or the layer
+    * above is still dirty.
+    */
+   private void discardContentSize(Container self)
+   {
       this.dimMin = null;
       this.dimMax = null;
-      if (self.getParent() != null && self.getParent().getLayout() != null
-            && (self.getParent().getLayout() instanceof TotemLayout
-                  || self.getParent().getLayout() instanceof TrainLayout))
+      TOnionListener listener = TOnionInstrumentation.getListener();
+      if (listener != null)
+         listener.invalidated(self);
+      if (batch > 0)
       {
-         ((LayoutManager2) self.getParent().getLayout())
-               .invalidateLayout(self.getParent());
+         batchChanged = true;
+         return;
       }
+      if (dirty)
+         return;
+      dirty = true;
+      OnionLayoutEngine.invalidateParent(self);
    }
 
    /**
@@ -907,6 +680,26 @@ public class TrainLayout
       return 0;
    }
 
+   /**
+    * Returns the engine, for TOnionSnapshot.
+    */
+   OnionLayoutEngine getEngine()
+   {
+      return engine;
+   }
+
+   /**
+    * Restores the minimum and maximum size of the content from a
+    * TOnionSnapshot. The layers above have been restored as well, so they
+    * are not dirty.
+    */
+   void restoreContentSize(Dimension min, Dimension max)
+   {
+      this.dimMin = min;
+      this.dimMax = max;
+      this.dirty = false;
+   }
+
    private void checkContainer(Container self)
    {
       if (this.self != self)
@@ -914,4 +707,4 @@ public class TrainLayout
          throw new AWTError("TrainLayout can't be shared");
       }
    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.Dimension;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that a live resize of a warmed onion tree does not allocate.
+ * <p>
+ * The outermost container is dragged through sixteen widths, so no layer can
+ * answer from a remembered distribution, and all layers are laid out each
+ * time. After a warm-up the bytes allocated by the thread during further
+ * passes must be zero, as measured by
+ * <code>com.sun.management.ThreadMXBean</code>. Each tree is dragged twice:
+ * without peers, laid out by calling the layouts, and with peers, validated
+ * like a displayed window, where every resize invalidates the container.
+ *
+ * <pre>
+ * java -Djava.awt.headless=true -cp target/classes:target/test-classes \
+ *       de.copepod.tonion.AllocationCheck
+ * </pre>
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+public final class AllocationCheck
+{
+   private static final int WARMUP = 5000;
+   private static final int PASSES = 2000;
+
+   private AllocationCheck()
+   {
+   }
+
+   public static void main(String[] args)
+   {
+      java.lang.management.ThreadMXBean bean = ManagementFactory
+            .getThreadMXBean();
+      OnionTree.check(bean instanceof com.sun.management.ThreadMXBean,
+            "the JVM does not measure allocated bytes");
+      com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) bean;
+      threads.setThreadAllocatedMemoryEnabled(true);
+      long thread = Thread.currentThread().getId();
+
+      for (String shape : new String[] { "2x64", "3x16", "6x4", "12x2" })
+      {
+         check(threads, thread, shape, false);
+         check(threads, thread, shape, true);
+      }
+   }
+
+   /**
+    * Drags a tree built in the given shape and checks that the passes after
+    * the warm-up do not allocate.
+    */
+   private static void check(com.sun.management.ThreadMXBean threads,
+         long thread, String shape, boolean peers)
+   {
+      OnionTree tree = OnionTree.build(shape);
+      if (peers)
+         tree.root.addNotify();
+      Dimension min = tree.root.getLayout().minimumLayoutSize(tree.root);
+      int width = min.width * 3 / 2;
+      int height = min.height * 3 / 2;
+
+      for (int i = 0; i < WARMUP; i++)
+         drag(tree, width, height, i, peers);
+      // the measurement itself may allocate, which is subtracted
+      long before = threads.getThreadAllocatedBytes(thread);
+      long overhead = threads.getThreadAllocatedBytes(thread) - before;
+      before = threads.getThreadAllocatedBytes(thread);
+      for (int i = 0; i < PASSES; i++)
+         drag(tree, width, height, i, peers);
+      long allocated = threads.getThreadAllocatedBytes(thread) - before
+            - overhead;
+      String name = shape + (peers ? " with peers" : "");
+      System.out.println(name + ": " + allocated + " bytes in " + PASSES
+            + " passes");
+      OnionTree.check(allocated <= 0,
+            name + " allocated " + allocated + " bytes");
+   }
+
+   /**
+    * Resizes the outermost container and lays out the tree, by validating it
+    * if it has peers.
+    */
+   private static void drag(OnionTree tree, int width, int height, int i,
+         boolean peers)
+   {
+      tree.root.setSize(width + (i & 15), height);
+      if (peers)
+         tree.root.validate();
+      else
+         tree.layout();
+   }
+}
@@ -0,0 +1,140 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+
+import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+
+/**
+ * Checks that the layers <code>TOnionClipping</code> deferred are laid out
+ * completely when they are scrolled into view.
+ * <p>
+ * A form of rows is the view of a viewport with clipping installed. Each row
+ * is a train of two totems, each wrapped into a panel with a
+ * <code>BorderLayout</code>, so the leaf fields are two layers below the
+ * row. The form is laid out at two widths while the top can be seen, which
+ * defers the rows below, and then scrolled to the bottom. Every field that
+ * can be seen must have the bounds of the same field in a form laid out
+ * without clipping.
+ * <p>
+ * Without peers <code>Container.validate()</code> does nothing and resizing
+ * a component does not invalidate it, so nothing but the clipping lays out
+ * the deferred rows and what is inside them.
+ *
+ * <pre>
+ * java -Djava.awt.headless=true -cp target/classes:target/test-classes \
+ *       de.copepod.tonion.ClippingCheck
+ * </pre>
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+public final class ClippingCheck
+{
+   private static final int ROWS = 40;
+   private static final int LEAVES = 4;
+
+   private ClippingCheck()
+   {
+   }
+
+   public static void main(String[] args)
+   {
+      Component[] fields = new Component[ROWS * LEAVES];
+      JPanel form = form(fields);
+      JViewport viewport = new JViewport();
+      viewport.setView(form);
+      viewport.setSize(300, 150);
+      TOnionClipping.install(viewport);
+
+      Dimension min = form.getLayout().minimumLayoutSize(form);
+      form.setSize(400, min.height);
+      layOut(form);
+      form.setSize(300, min.height);
+      layOut(form);
+      viewport.setViewPosition(new Point(0, min.height - 150));
+
+      Component[] expected = new Component[fields.length];
+      JPanel fresh = form(expected);
+      fresh.setSize(form.getSize());
+      layOut(fresh);
+      Rectangle visible = viewport.getViewRect();
+      int seen = 0;
+      for (int i = 0; i < fields.length; i++)
+      {
+         Rectangle bounds = SwingUtilities.convertRectangle(
+               expected[i].getParent(), expected[i].getBounds(), fresh);
+         if (!bounds.intersects(visible))
+            continue;
+         seen++;
+         Rectangle actual = SwingUtilities.convertRectangle(
+               fields[i].getParent(), fields[i].getBounds(), form);
+         OnionTree.check(actual.equals(bounds), "field " + i + " at "
+               + actual + ", expected " + bounds);
+      }
+      OnionTree.check(seen > 0, "no field can be seen");
+      System.out.println(seen + " fields in view laid out");
+   }
+
+   /**
+    * Builds the form and fills in its leaf fields.
+    */
+   private static JPanel form(Component[] fields)
+   {
+      JPanel form = new JPanel(null);
+      form.setLayout(new TotemLayout(form, 2));
+      int n = 0;
+      for (int row = 0; row < ROWS; row++)
+      {
+         JPanel train = new JPanel(null);
+         train.setLayout(new TrainLayout(train, 2));
+         for (int column = 0; column < 2; column++)
+         {
+            JPanel totem = new JPanel(null);
+            totem.setLayout(new TotemLayout(totem, 2));
+            for (int i = 0; i < LEAVES / 2; i++)
+            {
+               JPanel field = new JPanel(null);
+               field.setMinimumSize(new Dimension(40 + n % 3 * 10, 18));
+               field.setMaximumSize(new Dimension(400, 18));
+               fields[n++] = field;
+               totem.add(field);
+            }
+            JPanel wrapper = new JPanel(new BorderLayout());
+            wrapper.add(totem);
+            // a BorderLayout has no maximum size of its own
+            wrapper.setMaximumSize(totem.getMaximumSize());
+            train.add(wrapper);
+         }
+         form.add(train);
+      }
+      return form;
+   }
+
+   /**
+    * Lays out a container and everything inside it, parents before children,
+    * the way <code>Container.validateTree()</code> would do it.
+    */
+   private static void layOut(Container parent)
+   {
+      parent.doLayout();
+      for (Component comp : parent.getComponents())
+      {
+         if (comp instanceof Container)
+            layOut((Container) comp);
+      }
+   }
+}
@@ -0,0 +1,189 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.BorderLayout;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.LayoutManager2;
+
+import javax.swing.JPanel;
+import javax.swing.JViewport;
+
+/**
+ * Checks that the remembered sizes stay coherent across all combinations of
+ * TOnion layers.
+ * <p>
+ * For each of the 27 three-level nestings of <code>TotemLayout</code>,
+ * <code>TrainLayout</code> and <code>BullsEyeLayout</code> a field at the
+ * bottom changes its minimum and maximum size and only the layout of its
+ * container is invalidated, the way <code>Component.invalidate()</code>
+ * starts it. The minimum and maximum size of the outermost container must
+ * then be the same as those of a tree built with the new sizes, after one
+ * change and after two changes without a size query in between. Each nesting
+ * is checked three ways: plain, with a JPanel with a BorderLayout around each
+ * nested layer, and as the view of a JViewport with
+ * <code>TOnionClipping</code> installed and a virtualized outermost totem.
+ *
+ * <pre>
+ * java -Djava.awt.headless=true -cp target/classes:target/test-classes \
+ *       de.copepod.tonion.InvalidationCheck
+ * </pre>
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+public final class InvalidationCheck
+{
+   private static final String[] LAYERS = { "totem", "train", "bullseye" };
+
+   private static final String[] VARIANTS = { "plain", "wrapped",
+         "viewport" };
+
+   private InvalidationCheck()
+   {
+   }
+
+   public static void main(String[] args)
+   {
+      int checked = 0;
+      for (String variant : VARIANTS)
+      {
+         for (String outer : LAYERS)
+         {
+            for (String middle : LAYERS)
+            {
+               for (String inner : LAYERS)
+               {
+                  check(variant, outer, middle, inner);
+                  checked++;
+               }
+            }
+         }
+      }
+      System.out.println(checked + " nestings coherent");
+   }
+
+   private static void check(String variant, String outer, String middle,
+         String inner)
+   {
+      String name = variant + " " + outer + "/" + middle + "/" + inner;
+      Tree tree = new Tree(variant, outer, middle, inner, 30);
+      tree.sizes();
+
+      tree.change(44);
+      compare(name + " after one change", tree,
+            new Tree(variant, outer, middle, inner, 44));
+
+      tree.change(52);
+      tree.change(36);
+      compare(name + " after two changes", tree,
+            new Tree(variant, outer, middle, inner, 36));
+   }
+
+   private static void compare(String name, Tree tree, Tree expected)
+   {
+      Dimension[] actual = tree.sizes();
+      Dimension[] fresh = expected.sizes();
+      OnionTree.check(actual[0].equals(fresh[0]), name
+            + ": minimum size " + actual[0] + ", expected " + fresh[0]);
+      OnionTree.check(actual[1].equals(fresh[1]), name
+            + ": maximum size " + actual[1] + ", expected " + fresh[1]);
+   }
+
+   /**
+    * Three nested layers with the changing field at the bottom, each totem
+    * and train layer also holds a fixed field.
+    */
+   private static final class Tree
+   {
+      final JPanel root;
+      final JPanel bottom;
+      final JPanel field;
+
+      Tree(String variant, String outer, String middle, String inner,
+            int height)
+      {
+         boolean wrapped = variant.equals("wrapped");
+         root = layer(outer);
+         JPanel second = layer(middle);
+         bottom = layer(inner);
+         field = field(height);
+         add(bottom, field);
+         add(second, wrapped ? wrap(bottom) : bottom);
+         add(root, wrapped ? wrap(second) : second);
+         if (variant.equals("viewport"))
+         {
+            if (root.getLayout() instanceof TotemLayout)
+               ((TotemLayout) root.getLayout()).setVirtualized(true);
+            JViewport viewport = new JViewport();
+            viewport.setView(root);
+            viewport.setSize(200, 100);
+            TOnionClipping.install(viewport);
+         }
+      }
+
+      /**
+       * Changes the height of the field and invalidates its container.
+       */
+      void change(int height)
+      {
+         field.setMinimumSize(new Dimension(60, height));
+         field.setMaximumSize(new Dimension(300, 2 * height));
+         ((LayoutManager2) bottom.getLayout()).invalidateLayout(bottom);
+      }
+
+      /**
+       * Returns the minimum and maximum size of the outermost container.
+       */
+      Dimension[] sizes()
+      {
+         LayoutManager2 layout = (LayoutManager2) root.getLayout();
+         return new Dimension[] { new Dimension(layout.minimumLayoutSize(root)),
+               new Dimension(layout.maximumLayoutSize(root)) };
+      }
+
+      private static JPanel layer(String kind)
+      {
+         JPanel layer = new JPanel(null);
+         if (kind.equals("totem"))
+            layer.setLayout(new TotemLayout(layer, 2));
+         else if (kind.equals("train"))
+            layer.setLayout(new TrainLayout(layer, 2));
+         else
+            layer.setLayout(new BullsEyeLayout(layer));
+         return layer;
+      }
+
+      private static JPanel field(int height)
+      {
+         JPanel field = new JPanel(null);
+         field.setMinimumSize(new Dimension(60, height));
+         field.setMaximumSize(new Dimension(300, 2 * height));
+         return field;
+      }
+
+      private static JPanel wrap(JPanel layer)
+      {
+         JPanel wrapper = new JPanel(new BorderLayout());
+         wrapper.add(layer, BorderLayout.CENTER);
+         return wrapper;
+      }
+
+      /**
+       * Adds a component to a layer, plus a fixed field unless the layer is
+       * a BullsEye.
+       */
+      private static void add(Container layer, JPanel component)
+      {
+         layer.add(component);
+         if (!(layer.getLayout() instanceof BullsEyeLayout))
+            layer.add(field(24));
+      }
+   }
+}
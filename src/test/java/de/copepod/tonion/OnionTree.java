@@ -0,0 +1,225 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.LayoutManager;
+import java.awt.LayoutManager2;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JPanel;
+
+/**
+ * A synthetic TOnion tree that can be laid out without a display.
+ * <p>
+ * The layers alternate between <code>TotemLayout</code> and
+ * <code>TrainLayout</code>, starting with a totem at the root. Every nested
+ * layer on an odd level is wrapped into a <code>BullsEyeLayout</code>, so all
+ * three layout managers are exercised. The innermost layer holds
+ * <code>fanout</code> leaf fields that have a minimum and maximum size set, as
+ * TOnionLayout expects it.
+ * <p>
+ * Since there is no peer, <code>Container.validate()</code> does nothing in a
+ * headless JVM. The tree therefore keeps a list of all its containers in
+ * top-down order and calls the layout managers directly.
+ * <p>
+ * The same tree is also built from <code>TOnionNode</code>s for the
+ * <code>TOnionSolver</code>.
+ * <p>
+ * The tree is shared by the headless checks and the benchmarks module, which
+ * gets it from the test jar of TOnion.
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+public final class OnionTree
+{
+   /**
+    * The outermost container.
+    */
+   public final JPanel root;
+
+   /**
+    * All containers with a TOnion layout, parents before children.
+    */
+   public final Container[] layers;
+
+   /**
+    * The number of leaf fields.
+    */
+   public final int leaves;
+
+   /**
+    * All leaf fields, in the order they were added.
+    */
+   public final Component[] fields;
+
+   /**
+    * The same tree as nodes.
+    */
+   public final TOnionNode node;
+
+   private OnionTree(JPanel root, List<Container> layers,
+         List<Component> fields, TOnionNode node)
+   {
+      this.root = root;
+      this.layers = layers.toArray(new Container[layers.size()]);
+      this.fields = fields.toArray(new Component[fields.size()]);
+      this.leaves = this.fields.length;
+      this.node = node;
+   }
+
+   /**
+    * Builds a tree from a shape of the form <code>depth x fanout</code>, e.g.
+    * <code>"6x4"</code>.
+    *
+    * @param shape
+    *           the depth and fanout separated by an 'x'
+    * @return the tree
+    */
+   public static OnionTree build(String shape)
+   {
+      int x = shape.indexOf('x');
+      if (x < 0)
+         throw new IllegalArgumentException("shape must be depth x fanout");
+      return build(Integer.parseInt(shape.substring(0, x)),
+            Integer.parseInt(shape.substring(x + 1)));
+   }
+
+   /**
+    * Builds a tree with <code>fanout ^ depth</code> leaf fields.
+    *
+    * @param depth
+    *           the number of Totem/Train levels, at least one
+    * @param fanout
+    *           the number of components inside each Totem/Train layer
+    * @return the tree
+    */
+   public static OnionTree build(int depth, int fanout)
+   {
+      if (depth < 1 || fanout < 1)
+         throw new IllegalArgumentException(
+               "depth and fanout must be positive numbers");
+      List<Container> layers = new ArrayList<Container>();
+      JPanel root = new JPanel(null);
+      root.setLayout(new TotemLayout(root, 2));
+      layers.add(root);
+      TOnionNode node = new TOnionNode(TOnionNode.Layer.TOTEM, 2);
+      List<Component> fields = new ArrayList<Component>();
+      fill(root, node, true, 1, depth, fanout, layers, fields);
+      return new OnionTree(root, layers, fields, node);
+   }
+
+   private static void fill(JPanel layer, TOnionNode node, boolean totem,
+         int level, int depth, int fanout, List<Container> layers,
+         List<Component> fields)
+   {
+      for (int i = 0; i < fanout; i++)
+      {
+         if (level == depth)
+         {
+            Component leaf = leaf(fields.size());
+            fields.add(leaf);
+            layer.add(leaf);
+            node.add(new TOnionNode(leaf.getMinimumSize(),
+                  leaf.getMaximumSize()));
+            continue;
+         }
+         JPanel child = new JPanel(null);
+         child.setLayout(totem ? new TrainLayout(child, 2)
+               : new TotemLayout(child, 2));
+         TOnionNode childNode = new TOnionNode(
+               totem ? TOnionNode.Layer.TRAIN : TOnionNode.Layer.TOTEM, 2);
+         if (level % 2 == 1)
+         {
+            JPanel wrapper = new JPanel(null);
+            wrapper.setLayout(new BullsEyeLayout(wrapper));
+            layers.add(wrapper);
+            wrapper.add(child);
+            layer.add(wrapper);
+            node.add(new TOnionNode(TOnionNode.Layer.BULLS_EYE))
+                  .add(childNode);
+         }
+         else
+         {
+            layer.add(child);
+            node.add(childNode);
+         }
+         layers.add(child);
+         fill(child, childNode, !totem, level + 1, depth, fanout, layers,
+               fields);
+      }
+   }
+
+   private static Component leaf(int n)
+   {
+      JPanel leaf = new JPanel(null);
+      // vary the constraints so the distribution has work to do
+      int minW = 40 + (n % 7) * 10;
+      int minH = 18 + (n % 3) * 4;
+      leaf.setMinimumSize(new Dimension(minW, minH));
+      leaf.setMaximumSize(new Dimension(minW * 4 + (n % 5) * 20, minH * 2));
+      return leaf;
+   }
+
+   /**
+    * Lays out all TOnion layers top-down, the way
+    * <code>Container.validateTree()</code> would do it.
+    */
+   public void layout()
+   {
+      for (Container layer : layers)
+      {
+         layer.getLayout().layoutContainer(layer);
+      }
+   }
+
+   /**
+    * Discards the cached minimum and maximum sizes of every TOnion layer, as
+    * adding or removing a component at the bottom of each branch would do.
+    */
+   public void invalidate()
+   {
+      for (int i = layers.length - 1; i >= 0; i--)
+      {
+         LayoutManager layout = layers[i].getLayout();
+         ((LayoutManager2) layout).invalidateLayout(layers[i]);
+      }
+   }
+
+   /**
+    * Throws an AssertionError with the message unless the condition holds,
+    * for the headless checks.
+    */
+   static void check(boolean condition, String message)
+   {
+      if (!condition)
+         throw new AssertionError(message);
+   }
+
+   /**
+    * Invalidates the layouts of all containers above a component, bottom-up,
+    * the way <code>Component.invalidate()</code> does it in a valid tree. A
+    * headless tree is never valid, so it has to be done by hand.
+    *
+    * @param comp
+    *           the component that changed
+    */
+   public void invalidateAbove(Component comp)
+   {
+      for (Container c = comp.getParent(); c != null; c = c.getParent())
+      {
+         LayoutManager layout = c.getLayout();
+         if (layout instanceof LayoutManager2)
+            ((LayoutManager2) layout).invalidateLayout(c);
+      }
+   }
+}
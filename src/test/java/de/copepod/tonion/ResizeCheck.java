@@ -0,0 +1,154 @@
+package de.copepod.tonion;
+/*
+ * Copyright (c) 2020, Birke Heeren All rights reserved.
+ * Use only at own risk.
+ *
+ * TOnion Project
+ * Version 3.0: 20 July 2020
+ */
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+
+/**
+ * Checks that dragging a window does not ask its components for their sizes
+ * again.
+ * <p>
+ * The onion trees get their peers, so <code>Component.reshape</code>
+ * invalidates every container it resizes and <code>validate()</code> lays
+ * them out, as in a displayed window. While the outermost container is
+ * dragged through sixteen widths, no layout may be invalidated and no
+ * component may be queried. Afterwards a field changes its size, once after
+ * the drag and once while the container around it is resized and still
+ * invalid, and all fields must be placed as in a tree built with the new
+ * size.
+ *
+ * <pre>
+ * java -Djava.awt.headless=true -cp target/classes:target/test-classes \
+ *       de.copepod.tonion.ResizeCheck
+ * </pre>
+ *
+ * @author Birke Heeren
+ * @since private
+ */
+public final class ResizeCheck
+{
+   private static final int PASSES = 100;
+
+   private ResizeCheck()
+   {
+   }
+
+   public static void main(String[] args)
+   {
+      for (String shape : new String[] { "1x8", "2x64", "3x16", "6x4" })
+      {
+         OnionTree tree = OnionTree.build(shape);
+         tree.root.addNotify();
+         Dimension min = tree.root.getLayout().minimumLayoutSize(tree.root);
+         int width = min.width * 3 / 2;
+         int height = min.height * 3 / 2;
+         for (int i = 0; i < 32; i++)
+            drag(tree, width, height, i);
+
+         Counter counter = new Counter();
+         TOnionInstrumentation.setListener(counter);
+         try
+         {
+            for (int i = 0; i < PASSES; i++)
+               drag(tree, width, height, i);
+         }
+         finally
+         {
+            TOnionInstrumentation.setListener(null);
+         }
+         System.out.println(shape + ": " + counter.queries + " queries, "
+               + counter.invalidations + " invalidations in " + PASSES
+               + " passes");
+         OnionTree.check(counter.queries == 0,
+               shape + " queried " + counter.queries + " components");
+         OnionTree.check(counter.invalidations == 0, shape + " invalidated "
+               + counter.invalidations + " layouts");
+
+         int field = tree.fields.length / 2;
+         change(tree.fields[field], 30);
+         tree.root.setSize(width, height);
+         tree.root.validate();
+         compare(shape + " after a change", tree, field, 30, width, height);
+
+         // the container of the field is invalid, the change is not passed on
+         tree.root.setSize(width + 20, height);
+         change(tree.fields[field], 50);
+         tree.root.validate();
+         compare(shape + " after a change during a resize", tree, field, 50,
+               width + 20, height);
+      }
+   }
+
+   private static void drag(OnionTree tree, int width, int height, int i)
+   {
+      tree.root.setSize(width + (i & 15), height);
+      tree.root.validate();
+   }
+
+   /**
+    * Changes the height of a field and invalidates it.
+    */
+   private static void change(Component field, int height)
+   {
+      field.setMinimumSize(new Dimension(field.getMinimumSize().width,
+            height));
+      field.setMaximumSize(new Dimension(field.getMaximumSize().width,
+            height));
+      field.invalidate();
+   }
+
+   /**
+    * Compares the bounds of all fields with a tree built with the changed
+    * field.
+    */
+   private static void compare(String name, OnionTree tree, int field,
+         int height, int width, int rootHeight)
+   {
+      OnionTree fresh = OnionTree.build(name.substring(0, name.indexOf(' ')));
+      change(fresh.fields[field], height);
+      fresh.root.addNotify();
+      fresh.root.setSize(width, rootHeight);
+      fresh.root.validate();
+      for (int i = 0; i < tree.fields.length; i++)
+      {
+         OnionTree.check(
+               tree.fields[i].getBounds().equals(fresh.fields[i].getBounds()),
+               name + ": field " + i + " at " + tree.fields[i].getBounds()
+                     + ", expected " + fresh.fields[i].getBounds());
+      }
+   }
+
+   /**
+    * Counts the size queries and invalidations of all layouts.
+    */
+   private static final class Counter implements TOnionListener
+   {
+      int queries;
+      int invalidations;
+
+      @Override
+      public void started(Operation operation, Container self)
+      {
+      }
+
+      @Override
+      public void finished(Operation operation, Container self,
+            TOnionMeasurement measurement)
+      {
+         queries += measurement.getQueries();
+      }
+
+      @Override
+      public void invalidated(Container self)
+      {
+         invalidations++;
+      }
+   }
+}